@@ -0,0 +1,96 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.Expression;
+import yancey.expression.compiler.CompiledExpression;
+import yancey.expression.compiler.ExpressionCompiler;
+import yancey.expression.vm.Program;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates conditionals whose condition is random, so a branch is mispredicted half of the time.
+ * The first formula has cheap branches and is compiled to a select, the second one to jumps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConditionalBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({"if(a>b, a-b, b-a)+max(a,0)", "if(a>b, sqrt(a)*sin(b), exp(-b))"})
+    public String formula;
+
+    private final double[][] values = new double[SIZE][];
+    private BoundExpression boundExpression;
+    private Program program;
+    private double[] stack;
+    private CompiledExpression compiledExpression;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = new double[]{random.nextDouble(0, 3), random.nextDouble(0, 3)};
+        }
+        boundExpression = new Expression(formula).bind("a", "b");
+        program = Program.compile(boundExpression);
+        stack = program.newStack();
+        compiledExpression = ExpressionCompiler.compile(boundExpression);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double calculateBound() {
+        double sum = 0;
+        for (double[] value : values) {
+            sum += boundExpression.calculate(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double calculateProgram() {
+        double sum = 0;
+        for (double[] value : values) {
+            sum += program.calculate(value, stack);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double calculateCompiled() {
+        double sum = 0;
+        for (double[] value : values) {
+            sum += compiledExpression.eval(value);
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.benchmark;
+
+import java.util.List;
+
+/**
+ * The formulas the benchmarks run on, selected by the {@code corpus} parameter:
+ * {@code main} is every formula checked by Main, {@code large} is one long generated formula
+ * and {@code nested} is one generated formula with deeply nested brackets.
+ */
+public class Corpus {
+
+    public static final List<String> VARIABLE_NAMES = List.of("a", "b", "c", "d");
+
+    public static final double[] VALUES = {2.5, 3.0, 5.0, 7.0};
+
+    private static final List<String> MAIN = List.of(
+            "3*a+5",
+            "1/2*(a)^2+3*a-4",
+            "3*b+5",
+            "1/2*(b)^2+3*b-4",
+            "3*(b-a)",
+            "1/2*((b)^2-(a)^2)+3(b-a)",
+            "3",
+            "c+3",
+            "1",
+            "4*a+(3/2)*(a)^2",
+            "2*(a)^2+(1/2)*(a)^3+5",
+            "2*(a)^3-4.5*(a)^2-(2*(a-1)^3-4.5*(a-1)^2)",
+            "6*(a)^2-9*a",
+            "2*sqrt((a)^3+a+25)",
+            "2*3.14*a",
+            "6.28",
+            "4*3.14*3.14*(a)^2",
+            "2(a)^2",
+            "2*a",
+            "2*(a)^(4)",
+            "(2/3)*(b)^(3)",
+            "18*a",
+            "81*(a)^(4)",
+            "3*(2/(9*tan(b*3.14159/180)))",
+            "-a/2",
+            "a",
+            "(a)^2*b/4",
+            "sqrt(20*b)*(c-a)/(a+c)",
+            "sqrt(20*b)*2*a/(a+c)",
+            "sqrt(a*c/(10*(a+c)))*b",
+            "(a^2-b^2)/(sqrt(3)*(a^2+b^2))",
+            "b/a",
+            "sqrt((-c*a+d*b)^2)",
+            "b/c",
+            "(b)^(2)/(2*c)",
+            "1000*(b^2)/(2*a*c)",
+            "3*a*b^2/(2*(b+3*c)^2*d)",
+            "2*c",
+            "4*c/b",
+            "3*a*c^2/2",
+            "0.5*a*b*6.28*c/(60*2*0.4*100*(0.5+0.75))",
+            "6.28*c*0.5*a*b/(60*8*0.4*(0.5+0.75))",
+            "b*c/2/(0.5(a+b))",
+            "b*(1/2)^2/(a+b)",
+            "2*a*sqrt(10*b*(1-sqrt(2)/2)/3)/0.2",
+            "50*10/(20+50+a/2)",
+            "6*c*d/((a+3*c)*b)",
+            "a*10*0.5",
+            "5(10-b/2)",
+            "0.5(5(10-b/2)*0.5-a*10*0.5)/(b/2)",
+            "0.5ab*6.28*c/(60*2*0.4*100*(0.5+0.75))",
+            "2 * a"
+    );
+
+    private Corpus() {
+    }
+
+    public static String[] formulas(String corpus) {
+        return switch (corpus) {
+            case "main" -> MAIN.toArray(new String[0]);
+            case "large" -> new String[]{large(500)};
+            case "nested" -> new String[]{nested(256)};
+            default -> throw new IllegalArgumentException("unknown corpus: " + corpus);
+        };
+    }
+
+    /**
+     * A flat formula with the given number of terms, mixing every operator and some functions.
+     */
+    public static String large(int terms) {
+        StringBuilder result = new StringBuilder("a");
+        for (int i = 1; i < terms; i++) {
+            switch (i % 4) {
+                case 0 -> result.append('+').append(i).append(".5*b");
+                case 1 -> result.append("-c/").append(i);
+                case 2 -> result.append("+sqrt(d*").append(i).append(')');
+                default -> result.append("+(a-b)^2*").append(i % 7);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * A formula whose brackets are nested to the given depth.
+     */
+    public static String nested(int depth) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            result.append(switch (i % 4) {
+                case 0 -> "a+(";
+                case 1 -> "b*(";
+                case 2 -> "-c+(";
+                default -> "2(d-";
+            });
+        }
+        result.append('1');
+        result.append(")".repeat(depth));
+        return result.toString();
+    }
+
+}
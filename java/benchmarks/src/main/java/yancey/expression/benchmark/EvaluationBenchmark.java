@@ -0,0 +1,115 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.Expression;
+import yancey.expression.compiler.CompiledExpression;
+import yancey.expression.compiler.ExpressionCompiler;
+import yancey.expression.memo.MemoizedExpression;
+import yancey.expression.vm.Program;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({"main", "large", "nested"})
+    public String corpus;
+
+    private Map<String, Double> variables;
+    private double[] values;
+    private Expression[] expressions;
+    private BoundExpression[] boundExpressions;
+    private Program[] programs;
+    private double[][] stacks;
+    private CompiledExpression[] compiledExpressions;
+    private MemoizedExpression[] memoizedExpressions;
+
+    @Setup
+    public void setup() {
+        variables = new HashMap<>();
+        for (int i = 0; i < Corpus.VARIABLE_NAMES.size(); i++) {
+            variables.put(Corpus.VARIABLE_NAMES.get(i), Corpus.VALUES[i]);
+        }
+        values = Corpus.VALUES.clone();
+        String[] formulas = Corpus.formulas(corpus);
+        expressions = new Expression[formulas.length];
+        boundExpressions = new BoundExpression[formulas.length];
+        programs = new Program[formulas.length];
+        stacks = new double[formulas.length][];
+        compiledExpressions = new CompiledExpression[formulas.length];
+        memoizedExpressions = new MemoizedExpression[formulas.length];
+        for (int i = 0; i < formulas.length; i++) {
+            expressions[i] = new Expression(formulas[i]);
+            boundExpressions[i] = expressions[i].bind(Corpus.VARIABLE_NAMES);
+            programs[i] = Program.compile(boundExpressions[i]);
+            stacks[i] = programs[i].newStack();
+            compiledExpressions[i] = ExpressionCompiler.compile(boundExpressions[i]);
+            memoizedExpressions[i] = new MemoizedExpression(boundExpressions[i], 16);
+        }
+    }
+
+    @Benchmark
+    public void calculateMap(Blackhole blackhole) {
+        for (Expression expression : expressions) {
+            blackhole.consume(expression.calculate(variables));
+        }
+    }
+
+    @Benchmark
+    public void calculateBound(Blackhole blackhole) {
+        for (BoundExpression boundExpression : boundExpressions) {
+            blackhole.consume(boundExpression.calculate(values));
+        }
+    }
+
+    @Benchmark
+    public void calculateProgram(Blackhole blackhole) {
+        for (int i = 0; i < programs.length; i++) {
+            blackhole.consume(programs[i].calculate(values, stacks[i]));
+        }
+    }
+
+    @Benchmark
+    public void calculateCompiled(Blackhole blackhole) {
+        for (CompiledExpression compiledExpression : compiledExpressions) {
+            blackhole.consume(compiledExpression.eval(values));
+        }
+    }
+
+    /**
+     * Every call after the first is a cache hit, so this is the best case of memoization.
+     */
+    @Benchmark
+    public void calculateMemoized(Blackhole blackhole) {
+        for (MemoizedExpression memoizedExpression : memoizedExpressions) {
+            blackhole.consume(memoizedExpression.calculate(values));
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.Expression;
+import yancey.expression.fastmath.FastMath;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Math} with {@link FastMath}, alone and inside the tree interpreter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastMathBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({"sin(a)*cos(b)+exp(-a*a/2)", "a^b+log(a*b+1,e)"})
+    public String formula;
+
+    private final double[] arguments = new double[SIZE];
+    private final float[] floatArguments = new float[SIZE];
+    private final double[][] values = new double[SIZE][];
+    private BoundExpression strictExpression;
+    private BoundExpression fastExpression;
+    private BoundExpression floatExpression;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SIZE; i++) {
+            arguments[i] = random.nextDouble(0.01, 10);
+            floatArguments[i] = (float) arguments[i];
+            values[i] = new double[]{random.nextDouble(0, 3), random.nextDouble(-3, 3)};
+        }
+        Expression expression = new Expression(formula);
+        strictExpression = expression.bind("a", "b");
+        fastExpression = expression.fastMath(FastMath.Precision.DOUBLE).bind("a", "b");
+        floatExpression = expression.fastMath(FastMath.Precision.FLOAT).bind("a", "b");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinStrict() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.sin(argument);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinFast() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.sin(argument);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public float sinFloat() {
+        float sum = 0;
+        for (float argument : floatArguments) {
+            sum += FastMath.sinFloat(argument);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double expStrict() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.exp(argument);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double expFast() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.exp(argument);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double logStrict() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.log(argument);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double logFast() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.log(argument);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double powStrict() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += Math.pow(argument, 1.7);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double powFast() {
+        double sum = 0;
+        for (double argument : arguments) {
+            sum += FastMath.pow(argument, 1.7);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double calculateStrict() {
+        double sum = 0;
+        for (double[] value : values) {
+            sum += strictExpression.calculate(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double calculateFast() {
+        double sum = 0;
+        for (double[] value : values) {
+            sum += fastExpression.calculate(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double calculateFloat() {
+        double sum = 0;
+        for (double[] value : values) {
+            sum += floatExpression.calculate(value);
+        }
+        return sum;
+    }
+
+}
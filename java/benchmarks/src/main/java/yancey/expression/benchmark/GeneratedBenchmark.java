@@ -0,0 +1,71 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.Expression;
+import yancey.expression.codegen.Formula;
+import yancey.expression.compiler.CompiledExpression;
+import yancey.expression.compiler.ExpressionCompiler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a class generated at build time by {@link Formula} with the runtime backends on the same formula.
+ */
+@Formula(name = "GeneratedFormula", value = GeneratedBenchmark.FORMULA, variables = {"a", "b", "c", "d"})
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedBenchmark {
+
+    static final String FORMULA = "3*a*b^2/(2*(b+3*c)^2*d)+sqrt(20*b)*(c-a)/(a+c)";
+
+    private double[] values;
+    private BoundExpression boundExpression;
+    private CompiledExpression compiledExpression;
+
+    @Setup
+    public void setup() {
+        values = Corpus.VALUES.clone();
+        boundExpression = new Expression(FORMULA).bind(Corpus.VARIABLE_NAMES);
+        compiledExpression = ExpressionCompiler.compile(boundExpression);
+        if (GeneratedFormula.eval(values[0], values[1], values[2], values[3]) != boundExpression.calculate(values)) {
+            throw new IllegalStateException("the generated formula differs from the interpreter");
+        }
+    }
+
+    @Benchmark
+    public double calculateBound() {
+        return boundExpression.calculate(values);
+    }
+
+    @Benchmark
+    public double calculateCompiled() {
+        return compiledExpression.eval(values);
+    }
+
+    @Benchmark
+    public double calculateGenerated() {
+        return GeneratedFormula.eval(values[0], values[1], values[2], values[3]);
+    }
+
+}
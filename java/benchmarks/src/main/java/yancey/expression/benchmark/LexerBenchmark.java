@@ -0,0 +1,61 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import yancey.expression.lexer.Lexer;
+import yancey.expression.lexer.TokenBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"main", "large", "nested"})
+    public String corpus;
+
+    private String[] formulas;
+    private TokenBuffer tokenBuffer;
+
+    @Setup
+    public void setup() {
+        formulas = Corpus.formulas(corpus);
+        tokenBuffer = new TokenBuffer();
+    }
+
+    @Benchmark
+    public void lexTokenList(Blackhole blackhole) {
+        for (String formula : formulas) {
+            blackhole.consume(Lexer.lex(formula));
+        }
+    }
+
+    @Benchmark
+    public void lexTokenBuffer(Blackhole blackhole) {
+        for (String formula : formulas) {
+            blackhole.consume(Lexer.lex(formula, tokenBuffer).size());
+        }
+    }
+
+}
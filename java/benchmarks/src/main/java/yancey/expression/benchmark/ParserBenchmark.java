@@ -0,0 +1,79 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import yancey.expression.ast.Expression;
+import yancey.expression.lexer.Lexer;
+import yancey.expression.lexer.TokenBuffer;
+import yancey.expression.parser.Parser;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"main", "large", "nested"})
+    public String corpus;
+
+    private String[] formulas;
+    private TokenBuffer[] tokens;
+    private Expression[] expressions;
+
+    @Setup
+    public void setup() {
+        formulas = Corpus.formulas(corpus);
+        tokens = new TokenBuffer[formulas.length];
+        expressions = new Expression[formulas.length];
+        for (int i = 0; i < formulas.length; i++) {
+            tokens[i] = Lexer.lex(formulas[i], new TokenBuffer());
+            expressions[i] = new Expression(formulas[i]);
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (TokenBuffer tokenBuffer : tokens) {
+            blackhole.consume(Parser.parse(tokenBuffer));
+        }
+    }
+
+    /**
+     * Lexing, parsing and optimizing.
+     */
+    @Benchmark
+    public void newExpression(Blackhole blackhole) {
+        for (String formula : formulas) {
+            blackhole.consume(new Expression(formula));
+        }
+    }
+
+    @Benchmark
+    public void bind(Blackhole blackhole) {
+        for (Expression expression : expressions) {
+            blackhole.consume(expression.bind(Corpus.VARIABLE_NAMES));
+        }
+    }
+
+}
@@ -5,22 +5,665 @@
  * Website: https://github.com/Yancey2023/ExpressionEngine
  */
 
+import yancey.expression.ExpressionCache;
+import yancey.expression.ast.BoundExpression;
 import yancey.expression.ast.Expression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.batch.BatchEvaluator;
+import yancey.expression.batch.ParallelEvaluator;
+import yancey.expression.codegen.JavaSourceGenerator;
+import yancey.expression.compact.CompactStore;
+import yancey.expression.compact.VariableTable;
+import yancey.expression.compiler.ExpressionCompiler;
+import yancey.expression.csv.CsvEvaluator;
+import yancey.expression.csv.DoubleParser;
+import yancey.expression.dag.ExpressionGroup;
+import yancey.expression.dag.IncrementalEvaluator;
+import yancey.expression.diff.GradientEvaluator;
+import yancey.expression.fastmath.FastMath;
+import yancey.expression.io.ExpressionSerializer;
+import yancey.expression.io.ExpressionStore;
+import yancey.expression.memo.ConcurrentMemoizedExpression;
+import yancey.expression.memo.MemoizedExpression;
+import yancey.expression.metrics.ExpressionListener;
+import yancey.expression.metrics.ExpressionMetrics;
+import yancey.expression.metrics.MetricsCollector;
+import yancey.expression.optimizer.Optimizer;
+import yancey.expression.parser.ErrorCode;
+import yancey.expression.parser.ParseException;
+import yancey.expression.parser.ValidationResult;
+import yancey.expression.vm.Program;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 
 public class Main {
 
+    private record Case(String formula, List<String> variableNames, double[] values, double answer) {
+    }
+
+    private static final List<Case> CASES = new ArrayList<>();
+
     private static void test(String formula, Map<String, Double> variables, double answer) {
-        double calculateResult = new Expression(formula).calculate(variables);
+        Expression expression = new Expression(formula);
+        List<String> variableNames = List.copyOf(variables.keySet());
+        double[] values = new double[variableNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = variables.get(variableNames.get(i));
+        }
+        BoundExpression boundExpression = expression.bind(variableNames);
+        boolean successful = check(formula, "interpreter", expression.calculate(variables), answer);
+        successful &= check(formula, "bound", boundExpression.calculate(values), answer);
+        successful &= check(formula, "compiled", ExpressionCompiler.compile(boundExpression).eval(values), answer);
+        successful &= check(formula, "program", Program.compile(boundExpression).calculate(values), answer);
+        successful &= check(formula, "group", ExpressionGroup.compile(variableNames, expression).calculate(values)[0], answer);
+        successful &= check(formula, "gradient", new GradientEvaluator(variableNames, expression).calculate(values, new double[values.length]), answer);
+        Expression deserialized = ExpressionSerializer.deserialize(ByteBuffer.wrap(ExpressionSerializer.serialize(expression)));
+        successful &= check(formula, "serialized", deserialized.calculate(variables), answer);
+        MemoizedExpression memoizedExpression = new MemoizedExpression(boundExpression, 16);
+        successful &= check(formula, "memoized", memoizedExpression.calculate(values), answer);
+        successful &= check(formula, "memoized", memoizedExpression.calculate(values), answer) && memoizedExpression.getHitCount() == 1;
+        ConcurrentMemoizedExpression concurrentMemoizedExpression = new ConcurrentMemoizedExpression(boundExpression, 16);
+        successful &= check(formula, "concurrent memoized", concurrentMemoizedExpression.calculate(values), answer);
+        successful &= check(formula, "concurrent memoized", concurrentMemoizedExpression.calculate(values), answer) && concurrentMemoizedExpression.getHitCount() == 1;
+        successful &= checkClose(formula, "relaxed", new Expression(formula, false).calculate(variables), answer);
+        double[][] columns = new double[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            columns[i] = new double[]{values[i]};
+        }
+        double[] output = new double[1];
+        new BatchEvaluator(boundExpression).calculate(columns, output);
+        successful &= check(formula, "batch", output[0], answer);
+        if (successful) {
+            System.out.println("test successful: " + formula + " == " + answer);
+        }
+        CASES.add(new Case(formula, variableNames, values, answer));
+    }
+
+    private static void testDerivatives() {
+        List<String> formulas = List.of("a+b-a*b/(b+2)", "a^b+a^2*b", "sin(a)*cos(b)+tan(a/4)", "asin(a/4)+acos(b/4)+atan(a*b)",
+                "sqrt(a+b)+exp(-a)+log(a+2,b+3)+log(b+1,10)", "(a<b)+(a<=b)+(a>b)+(a>=b)+(a==b)+(a!=b)+a*b",
+                "if(a>b, a*b, b-a)+min(a,b)+max(a,b)+abs(a-b)+clamp(a,0,b*3)");
+        // points away from the kinks of the piecewise functions, taking either branch of each
+        double[][] points = {{0.7, 1.3}, {1.9, 0.4}};
+        double step = 1e-6;
+        Set<FunctionNode.Type> types = EnumSet.noneOf(FunctionNode.Type.class);
+        for (String formula : formulas) {
+            BoundExpression expression = new Expression(formula).bind("a", "b");
+            collectTypes(expression.getRoot(), types);
+            GradientEvaluator gradientEvaluator = new GradientEvaluator(List.of("a", "b"), new Expression(formula));
+            for (double[] point : points) {
+                double[] gradient = new double[2];
+                gradientEvaluator.calculate(point, gradient);
+                for (int j = 0; j < 2; j++) {
+                    double derivative = expression.derivative(j == 0 ? "a" : "b").calculate(point);
+                    double[] above = point.clone();
+                    double[] below = point.clone();
+                    above[j] += step;
+                    below[j] -= step;
+                    double difference = (expression.calculate(above) - expression.calculate(below)) / (2 * step);
+                    if (Math.abs(gradient[j] - derivative) > 1e-12 * Math.max(1, Math.abs(derivative)) ||
+                            Math.abs(difference - derivative) > 1e-5 * Math.max(1, Math.abs(derivative))) {
+                        System.err.println("test failed: " + formula + " (d/d" + (j == 0 ? "a" : "b") + " at " + Arrays.toString(point) +
+                                ") -> gradient " + gradient[j] + ", derivative " + derivative + ", finite difference " + difference);
+                        return;
+                    }
+                }
+            }
+        }
+        if (types.size() != FunctionNode.Type.values().length) {
+            Set<FunctionNode.Type> missing = EnumSet.allOf(FunctionNode.Type.class);
+            missing.removeAll(types);
+            System.err.println("test failed: derivatives do not cover " + missing);
+            return;
+        }
+        System.out.println("test successful: derivatives");
+    }
+
+    private static void collectTypes(BaseNode root, Set<FunctionNode.Type> types) {
+        ArrayDeque<BaseNode> nodes = new ArrayDeque<>(List.of(root));
+        while (!nodes.isEmpty()) {
+            if (nodes.pop() instanceof FunctionNode functionNode) {
+                types.add(functionNode.getType());
+                functionNode.getArguments().forEach(nodes::push);
+            }
+        }
+    }
+
+    private static void testLongFormulas() {
+        // the optimizer runs on every parse, so it must not recurse once per level of these left-deep trees
+        int products = Optimizer.countNodes(new Expression("a" + "+a*b".repeat(20000)).getRoot());
+        int sums = Optimizer.countNodes(new Expression("a" + "+a".repeat(100000)).getRoot());
+        if (products != 80001 || sums != 200001) {
+            System.err.println("test failed: long formulas -> " + products + ", " + sums + " nodes");
+            return;
+        }
+        // binding rebuilds the tree, so it must not recurse either
+        int boundProducts = Optimizer.countNodes(new Expression("a" + "+a*b".repeat(20000)).bind("a", "b").getRoot());
+        double boundSum = new Expression("a" + "+a*b".repeat(3000)).bind("a", "b").calculate(new double[]{1, 2});
+        if (boundProducts != 80001 || boundSum != 6001) {
+            System.err.println("test failed: long formulas (bind) -> " + boundProducts + " nodes, " + boundSum);
+            return;
+        }
+        // too deep to compile with the recursive emitter, so the compiler must fall back to the interpreter
+        StringBuilder branches = new StringBuilder("0");
+        for (int i = 0; i < 3000; i++) {
+            branches.append("+if(a>").append(i % 7).append(",sin(a*").append(i).append("),cos(b+").append(i).append("))");
+        }
+        BoundExpression branchExpression = new Expression(branches.toString()).bind("a", "b");
+        double[] branchValues = {3.5, 0.25};
+        double compiled = ExpressionCompiler.compile(branchExpression).eval(branchValues);
+        if (Double.doubleToRawLongBits(compiled) != Double.doubleToRawLongBits(branchExpression.calculate(branchValues))) {
+            System.err.println("test failed: long formulas (compiled) -> " + compiled + " != " + branchExpression.calculate(branchValues));
+            return;
+        }
+        System.out.println("test successful: long formulas");
+    }
+
+    private static void testDepth() {
+        String brackets = "(".repeat(2000) + "a" + ")".repeat(2000);
+        String negations = "-".repeat(2000) + "a";
+        for (String formula : List.of(brackets, negations)) {
+            try {
+                new Expression(formula);
+                System.err.println("test failed: " + formula.substring(0, 8) + "... is parsed with the default max depth");
+                return;
+            } catch (ParseException e) {
+                if (e.getErrorCode() != ErrorCode.TOO_DEEP) {
+                    System.err.println("test failed: " + formula.substring(0, 8) + "... -> " + e.getErrorCode());
+                    return;
+                }
+            }
+        }
+        // a larger max depth admits them, and a flat sum is not nested at all
+        double bracketValue = new Expression(brackets, true, 4096).calculate(Map.of("a", 3.0));
+        double negationValue = new Expression(negations, true, 4096).calculate(Map.of("a", 3.0));
+        double sumValue = new Expression("a" + "+a".repeat(2999)).bind("a").calculate(new double[]{1});
+        if (bracketValue != 3 || negationValue != 3 || sumValue != 3000) {
+            System.err.println("test failed: depth -> " + bracketValue + ", " + negationValue + ", " + sumValue);
+            return;
+        }
+        System.out.println("test successful: depth");
+    }
+
+    private static void testConditional() {
+        String formula = "if(a>b, a*a, b)+max(a,b)+abs(-a)+clamp(a,0,5)";
+        BoundExpression expression = new Expression(formula).bind("a", "b");
+        GradientEvaluator gradientEvaluator = new GradientEvaluator(List.of("a", "b"), new Expression(formula));
+        double[][] points = {{8, 3}, {1, 3}, {-2, 3}};
+        double[][] answers = {{18, 0}, {2, 2}, {-1, 2}};
+        for (int i = 0; i < points.length; i++) {
+            double[] gradient = new double[2];
+            gradientEvaluator.calculate(points[i], gradient);
+            for (int j = 0; j < 2; j++) {
+                double derivative = expression.derivative(j == 0 ? "a" : "b").calculate(points[i]);
+                if (gradient[j] != answers[i][j] || derivative != answers[i][j]) {
+                    System.err.println("test failed: " + formula + " (conditional d/d" + (j == 0 ? "a" : "b") + " at " +
+                                       Arrays.toString(points[i]) + ") -> " + gradient[j] + ", " + derivative + " != " + answers[i][j]);
+                    return;
+                }
+            }
+        }
+        System.out.println("test successful: derivatives of " + formula);
+    }
+
+    private static void testCache() {
+        ExpressionCache cache = new ExpressionCache(16, ExpressionCache.STRIP);
+        double product = cache.get("2 3").calculate(Map.of());
+        double stripped = cache.get(" 2 3 ").calculate(Map.of());
+        double number = cache.get("23").calculate(Map.of());
+        if (product != 6 || stripped != 6 || number != 23 || cache.getHitCount() != 1 || cache.size() != 2) {
+            System.err.println("test failed: cache -> " + product + ", " + stripped + ", " + number + ", " + cache.getHitCount() + " hits");
+            return;
+        }
+        // only the spaces the lexer skips are stripped, the spaces after a variable name at the end belong to it
+        Map<String, String> strips = Map.of(" 2*a+1 ", "2*a+1", " 2 a ", "2 a ", "(a) ", "(a)", "\t2 3\u2003", "\t2 3\u2003", "a+b ", "a+b ");
+        for (Map.Entry<String, String> strip : strips.entrySet()) {
+            if (!ExpressionCache.STRIP.apply(strip.getKey()).equals(strip.getValue())) {
+                System.err.println("test failed: cache strip \"" + strip.getKey() + "\" -> \"" + ExpressionCache.STRIP.apply(strip.getKey()) + "\"");
+                return;
+            }
+        }
+        System.out.println("test successful: cache");
+    }
+
+    private static void testCompact() {
+        VariableTable variableTable = new VariableTable();
+        CompactStore compactStore = new CompactStore(variableTable);
+        long treeSize = 0;
+        boolean successful = true;
+        for (Case testCase : CASES) {
+            for (String variableName : testCase.variableNames()) {
+                variableTable.intern(variableName);
+            }
+            Expression expression = new Expression(testCase.formula());
+            treeSize += CompactStore.estimateTreeSize(expression);
+            int index = compactStore.add(expression, testCase.variableNames());
+            double[] values = variableTable.newValues();
+            for (int i = 0; i < testCase.variableNames().size(); i++) {
+                values[variableTable.find(testCase.variableNames().get(i))] = testCase.values()[i];
+            }
+            successful &= check(testCase.formula(), "compact", compactStore.calculate(index, values), testCase.answer());
+        }
+        // ab is a product for the variables a and b even after the variable ab is interned
+        VariableTable nameTable = new VariableTable();
+        CompactStore nameStore = new CompactStore(nameTable);
+        int product = nameStore.add(new Expression("ab"), List.of("a", "b"));
+        int variable = nameStore.add(new Expression("ab"), List.of("ab"));
+        int productAgain = nameStore.add(new Expression("ab"), List.of("a", "b"));
+        double[] values = nameTable.newValues();
+        values[nameTable.find("a")] = 2;
+        values[nameTable.find("b")] = 3;
+        values[nameTable.find("ab")] = 7;
+        successful &= check("ab", "compact product", nameStore.calculate(product, values), 6);
+        successful &= check("ab", "compact variable", nameStore.calculate(variable, values), 7);
+        successful &= check("ab", "compact product", nameStore.calculate(productAgain, values), 6);
+        // constants are deduplicated by their bits across expressions, through several growths of the table
+        CompactStore constantStore = new CompactStore(new VariableTable());
+        for (int i = 0; i < 2000; i++) {
+            double constant = (i % 1000) + 0.5;
+            int index = constantStore.add(new Expression(String.valueOf(constant)), List.of());
+            successful &= check(String.valueOf(constant), "compact constant", constantStore.calculate(index, new double[0]), constant);
+        }
+        if (successful) {
+            System.out.println("test successful: compact store of " + compactStore.size() + " expressions, " +
+                    Math.round(compactStore.getBytesPerExpression()) + " bytes per expression instead of " + treeSize / CASES.size());
+        }
+    }
+
+    /**
+     * Run {@link #testMetrics()} in a JVM with metrics enabled, it prints its own result.
+     */
+    private static void testMetricsProcess() throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process process = new ProcessBuilder(java, "-Dyancey.expression.metrics=true", "-cp", System.getProperty("java.class.path"), "Main", "metrics")
+                .inheritIO().start();
+        if (process.waitFor() != 0) {
+            System.err.println("test failed: metrics process exited with " + process.exitValue());
+        }
+    }
+
+    private static void testMetrics() throws Exception {
+        if (!ExpressionMetrics.ENABLED) {
+            System.err.println("test failed: metrics are not enabled");
+            return;
+        }
+        List<String> fingerprints = new ArrayList<>();
+        ExpressionListener listener = new ExpressionListener() {
+            @Override
+            public void onParse(String fingerprint, long nanos) {
+                fingerprints.add(fingerprint);
+            }
+        };
+        ExpressionMetrics.addListener(listener);
+        MetricsCollector.install(16);
+        Expression expression = new Expression("1 + 2 * a*b");
+        expression.calculate(Map.of("a", 2.0, "b", 3.0));
+        expression.bind("a", "b").calculate(new double[]{2, 3});
+        try {
+            new Expression("a+x").calculate(Map.of("a", 1.0));
+        } catch (RuntimeException ignored) {
+        }
+        ExpressionMetrics.removeListener(listener);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MetricsCollector.OBJECT_NAME);
+        Object parseCount = server.getAttribute(name, "ParseCount");
+        Object evaluationCount = server.getAttribute(name, "EvaluationCount");
+        Object unknownVariableCount = server.getAttribute(name, "UnknownVariableCount");
+        String fingerprint = ExpressionMetrics.fingerprint("1+2*a*b");
+        if (!fingerprints.equals(List.of(fingerprint, ExpressionMetrics.fingerprint("a+x"))) ||
+                ExpressionMetrics.fingerprint("2 3").equals(ExpressionMetrics.fingerprint("23")) ||
+                !parseCount.equals(2L) || !evaluationCount.equals(2L) || !unknownVariableCount.equals(1L) ||
+                !Arrays.equals((String[]) server.getAttribute(name, "Fingerprints"), new String[]{fingerprint})) {
+            System.err.println("test failed: metrics -> fingerprints " + fingerprints + ", " + parseCount + " parses, " +
+                    evaluationCount + " evaluations, " + unknownVariableCount + " unknown variables");
+            return;
+        }
+        System.out.println("test successful: metrics");
+    }
+
+    private static void testDoubleParser() {
+        List<String> inputs = new ArrayList<>(List.of(
+                // halfway between two doubles, and just next to it
+                "9007199254740993", "9007199254740992.999999999", "9007199254740993.000000001", "1e23", "8.41e21",
+                "2.4703282292062327e-324", "2.4703282292062328e-324", "1.7976931348623157e308", "1.7976931348623158e308",
+                // subnormals, the boundaries of the range and more than 19 digits
+                "4.9e-324", "2.2250738585072011e-308", "2.2250738585072014e-308", "1e-400", "1e400", "-0", "0e999",
+                "12345678901234567890123", "0.000000000000000000000000123456789012345678901", "99999999999999999999e-20",
+                // malformed, or only accepted by Double.parseDouble
+                "", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "--1", "1-", "abc", "1x", "0x10", " 1", "1 ", "..1",
+                "Infinity", "-Infinity", "NaN", "1d", "1f"));
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            inputs.add(Double.toString(value));
+            inputs.add(Double.toString(Double.longBitsToDouble(random.nextLong() & 0x800FFFFFFFFFFFFFL)));
+            if (Double.isFinite(value) && Double.isFinite(Math.nextUp(value))) {
+                BigDecimal halfway = new BigDecimal(value).add(new BigDecimal(Math.nextUp(value))).divide(BigDecimal.valueOf(2));
+                inputs.add(halfway.toString());
+                inputs.add(halfway.round(new MathContext(17)).toString());
+            }
+            StringBuilder digits = new StringBuilder();
+            for (int j = random.nextInt(1, 25); j > 0; j--) {
+                digits.append((char) ('0' + random.nextInt(10)));
+            }
+            digits.insert(random.nextInt(digits.length() + 1), '.');
+            inputs.add(digits.append('e').append(random.nextInt(-350, 320)).toString());
+        }
+        for (String input : inputs) {
+            byte[] bytes = input.getBytes(StandardCharsets.ISO_8859_1);
+            String expected;
+            String actual;
+            try {
+                expected = Long.toHexString(Double.doubleToRawLongBits(Double.parseDouble(input)));
+            } catch (NumberFormatException e) {
+                expected = "invalid";
+            }
+            try {
+                actual = Long.toHexString(Double.doubleToRawLongBits(DoubleParser.parse(bytes, 0, bytes.length)));
+            } catch (NumberFormatException e) {
+                actual = "invalid";
+            }
+            if (!actual.equals(expected)) {
+                System.err.println("test failed: double parser \"" + input + "\" -> " + actual + " != " + expected);
+                return;
+            }
+        }
+        System.out.println("test successful: double parser of " + inputs.size() + " numbers");
+    }
+
+    private static void testParallel() throws Exception {
+        BoundExpression expression = new Expression("sin(a)*b+if(a>b, sqrt(a), b^2)-clamp(a,0,b)").bind("a", "b");
+        BatchEvaluator batchEvaluator = new BatchEvaluator(expression);
+        ParallelEvaluator parallelEvaluator = new ParallelEvaluator(expression);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int[] rowCounts = {0, 1, BatchEvaluator.BLOCK_SIZE - 1, BatchEvaluator.BLOCK_SIZE + 1, 3_000_017};
+            for (int rows : rowCounts) {
+                SplittableRandom random = new SplittableRandom(rows);
+                double[][] columns = {new double[rows], new double[rows]};
+                for (int i = 0; i < rows; i++) {
+                    columns[0][i] = random.nextDouble(-10, 10);
+                    columns[1][i] = random.nextDouble(-10, 10);
+                }
+                double[] expected = new double[rows];
+                batchEvaluator.calculate(columns, expected);
+                double[] forkJoin = new double[rows];
+                parallelEvaluator.calculate(columns, forkJoin);
+                double[] executed = new double[rows];
+                parallelEvaluator.calculate(columns, executed, executor, 4);
+                double[] streamed = parallelEvaluator.calculate(IntStream.range(0, rows)
+                        .mapToObj(i -> new double[]{columns[0][i], columns[1][i]}).spliterator());
+                String mode = !sameBits(forkJoin, expected) ? "fork/join" : !sameBits(executed, expected) ? "executor" :
+                        !sameBits(streamed, expected) ? "spliterator" : null;
+                if (mode != null) {
+                    System.err.println("test failed: parallel " + mode + " of " + rows + " rows differs from the batch evaluator");
+                    return;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        System.out.println("test successful: parallel");
+    }
+
+    private static void testIncremental() {
+        List<String> variableNames = List.of("a", "b", "c");
+        ExpressionGroup group = ExpressionGroup.compile(variableNames, new Expression("abs(a)*b+sin(c)"),
+                new Expression("if(a>c, b, -0*c)"), new Expression("min(a,b)/c+abs(a)*b"), new Expression("max(a,c)"));
+        double[] values = {1, 2, 3};
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(group, values);
+        double[] choices = {Double.NaN, -0.0, 0.0, 1, -1, 2.5, Double.POSITIVE_INFINITY};
+        SplittableRandom random = new SplittableRandom(42);
+        for (int step = 0; step < 10000; step++) {
+            int slot = random.nextInt(variableNames.size());
+            // draw from a few values often, so variables change back to old values and to NaN, 0 and -0
+            values[slot] = random.nextBoolean() ? choices[random.nextInt(choices.length)] : random.nextDouble(-5, 5);
+            evaluator.set(variableNames.get(slot), values[slot]);
+            if (random.nextInt(3) > 0) {
+                continue;
+            }
+            double[] expected = group.calculate(values);
+            for (int i = 0; i < expected.length; i++) {
+                if (Double.doubleToRawLongBits(evaluator.get(i)) != Double.doubleToRawLongBits(expected[i])) {
+                    System.err.println("test failed: incremental expression " + i + " at " + Arrays.toString(values) +
+                            " -> " + evaluator.get(i) + " != " + expected[i]);
+                    return;
+                }
+            }
+        }
+        // abs(a) does not change from 2 to -2, so only a and abs(a) are recalculated, not the product
+        IncrementalEvaluator product = new IncrementalEvaluator(ExpressionGroup.compile(List.of("a", "b"), new Expression("abs(a)*b")), new double[]{2, 3});
+        product.set("a", -2);
+        if (product.get(0) != 6 || product.getCalculationCount() != 2) {
+            System.err.println("test failed: incremental abs(a)*b -> " + product.get(0) + " after " +
+                    product.getCalculationCount() + " calculations");
+            return;
+        }
+        System.out.println("test successful: incremental");
+    }
+
+    private static boolean sameBits(double[] actual, double[] expected) {
+        if (actual.length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < actual.length; i++) {
+            if (Double.doubleToRawLongBits(actual[i]) != Double.doubleToRawLongBits(expected[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void testGenerated() throws Exception {
+        Path directory = Files.createTempDirectory("generated");
+        try {
+            List<Path> sources = new ArrayList<>();
+            for (int i = 0; i < CASES.size(); i++) {
+                Case testCase = CASES.get(i);
+                Path source = directory.resolve("Formula" + i + ".java");
+                Files.writeString(source, JavaSourceGenerator.generate("", "Formula" + i, testCase.formula(), testCase.variableNames(), true));
+                sources.add(source);
+            }
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            List<String> arguments = new ArrayList<>(List.of("-d", directory.toString()));
+            sources.forEach(source -> arguments.add(source.toString()));
+            if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+                System.err.println("test failed (generated): can not compile");
+                return;
+            }
+            boolean successful = true;
+            try (URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toUri().toURL()})) {
+                for (int i = 0; i < CASES.size(); i++) {
+                    Case testCase = CASES.get(i);
+                    Class<?>[] parameterTypes = new Class<?>[testCase.values().length];
+                    Object[] parameters = new Object[testCase.values().length];
+                    for (int j = 0; j < parameters.length; j++) {
+                        parameterTypes[j] = double.class;
+                        parameters[j] = testCase.values()[j];
+                    }
+                    Method eval = classLoader.loadClass("Formula" + i).getMethod("eval", parameterTypes);
+                    successful &= check(testCase.formula(), "generated", (double) eval.invoke(null, parameters), testCase.answer());
+                }
+            }
+            if (successful) {
+                System.out.println("test successful: generated " + CASES.size() + " classes");
+            }
+        } finally {
+            try (var paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void testFastMath() {
+        // the bounds documented in FastMath, checked against Math
+        SplittableRandom random = new SplittableRandom(42);
+        double sin = 0, cos = 0, exp = 0, log = 0, pow = 0;
+        double sinFloat = 0, cosFloat = 0, expFloat = 0, logFloat = 0, powFloat = 0;
+        for (int i = 0; i < 1000000; i++) {
+            double x = i % 2 == 0 ? random.nextDouble(-1e5, 1e5) : random.nextDouble(-10, 10);
+            float xFloat = (float) x;
+            sin = Math.max(sin, Math.abs(FastMath.sin(x) - Math.sin(x)));
+            cos = Math.max(cos, Math.abs(FastMath.cos(x) - Math.cos(x)));
+            sinFloat = Math.max(sinFloat, Math.abs(FastMath.sinFloat(xFloat) - Math.sin(xFloat)));
+            cosFloat = Math.max(cosFloat, Math.abs(FastMath.cosFloat(xFloat) - Math.cos(xFloat)));
+            double y = random.nextDouble(-700, 700);
+            float yFloat = (float) random.nextDouble(-86, 86);
+            exp = Math.max(exp, Math.abs(FastMath.exp(y) / Math.exp(y) - 1));
+            expFloat = Math.max(expFloat, Math.abs(FastMath.expFloat(yFloat) / Math.exp(yFloat) - 1));
+            double z = Math.exp(random.nextDouble(-700, 700));
+            float zFloat = (float) Math.exp(random.nextDouble(-80, 80));
+            log = Math.max(log, Math.abs(FastMath.log(z) - Math.log(z)) / Math.max(1, Math.abs(Math.log(z))));
+            logFloat = Math.max(logFloat, Math.abs(FastMath.logFloat(zFloat) - Math.log(zFloat)) / Math.max(1, Math.abs(Math.log(zFloat))));
+            double base = Math.exp(random.nextDouble(-20, 20));
+            double exponent = random.nextDouble(-30, 30);
+            pow = Math.max(pow, Math.abs(FastMath.pow(base, exponent) / Math.pow(base, exponent) - 1) / (1 + Math.abs(exponent * Math.log(base))));
+            float baseFloat = (float) Math.exp(random.nextDouble(-4, 4));
+            float exponentFloat = (float) random.nextDouble(-10, 10);
+            powFloat = Math.max(powFloat, Math.abs(FastMath.powFloat(baseFloat, exponentFloat) / Math.pow(baseFloat, exponentFloat) - 1) /
+                    (1 + Math.abs(exponentFloat * Math.log(baseFloat))));
+        }
+        boolean successful = sin <= 1e-15 && cos <= 1e-15 && exp <= 1e-15 && log <= 1e-15 && pow <= 1e-15;
+        successful &= sinFloat <= 1e-7 && cosFloat <= 1e-7 && expFloat <= 1e-7 && logFloat <= 1e-7 && powFloat <= 1e-7;
+        if (!successful) {
+            System.err.println("test failed (fast math): errors " + List.of(sin, cos, exp, log, pow) + ", float " + List.of(sinFloat, cosFloat, expFloat, logFloat, powFloat));
+        }
+        // whole expressions against the strict path
+        for (String formula : List.of("sin(a)*cos(b)+exp(-a*a/2)", "log(a*a+1,e)+log(b*b+2,a+2)", "a^b+pow(2,a)", "exp(sin(a))*cos(b)^2")) {
+            Expression expression = new Expression(formula);
+            Expression fastExpression = expression.fastMath(FastMath.Precision.DOUBLE);
+            Expression floatExpression = expression.fastMath(FastMath.Precision.FLOAT);
+            BoundExpression boundExpression = expression.bind("a", "b");
+            BoundExpression fastBoundExpression = fastExpression.bind("a", "b");
+            BoundExpression floatBoundExpression = floatExpression.bind("a", "b");
+            double error = 0;
+            double floatError = 0;
+            for (int i = 0; i < 10000; i++) {
+                double a = random.nextDouble(0, 3);
+                double b = random.nextDouble(-3, 3);
+                double answer = boundExpression.calculate(new double[]{a, b});
+                double scale = Math.max(1, Math.abs(answer));
+                error = Math.max(error, Math.abs(fastExpression.calculate(Map.of("a", a, "b", b)) - answer) / scale);
+                error = Math.max(error, Math.abs(fastBoundExpression.calculate(new double[]{a, b}) - answer) / scale);
+                floatError = Math.max(floatError, Math.abs(floatBoundExpression.calculate(new double[]{a, b}) - answer) / scale);
+            }
+            if (error <= 1e-14 && floatError <= 1e-5 && error != 0) {
+                System.out.println("test successful: fast math " + formula + ", error " + error + ", float error " + floatError);
+            } else {
+                successful = false;
+                System.err.println("test failed (fast math): " + formula + ", error " + error + ", float error " + floatError);
+            }
+        }
+        if (successful) {
+            System.out.println("test successful: fast math within the documented bounds");
+        }
+    }
+
+    private static boolean check(String formula, String mode, double calculateResult, double answer) {
         if (calculateResult != answer) {
-            System.err.println("test failed: " + formula + " = " + calculateResult + " != " + answer);
+            System.err.println("test failed (" + mode + "): " + formula + " = " + calculateResult + " != " + answer);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean checkClose(String formula, String mode, double calculateResult, double answer) {
+        if (!(Math.abs(calculateResult - answer) <= Math.abs(answer) * 1e-12)) {
+            System.err.println("test failed (" + mode + "): " + formula + " = " + calculateResult + " != " + answer);
+            return false;
+        }
+        return true;
+    }
+
+    private static void testStore(List<String> formulas, Map<String, Double> variables) throws IOException {
+        List<Expression> expressions = formulas.stream().map(Expression::new).toList();
+        Path path = Files.createTempFile("expressions", ".bin");
+        try {
+            ExpressionStore.write(path, expressions);
+            ExpressionStore store = ExpressionStore.open(path);
+            boolean successful = store.size() == expressions.size();
+            for (int i = 0; i < store.size(); i++) {
+                successful &= check(formulas.get(i), "store", store.get(i).calculate(variables), expressions.get(i).calculate(variables));
+            }
+            // a count of 2^31-1 and offsets that decrease or point past the data are rejected before decoding
+            byte[] bytes = Files.readAllBytes(path);
+            int[][] corruptions = {{8, Integer.MAX_VALUE}, {16, 0}, {12 + 4 * expressions.size(), bytes.length}};
+            for (int[] corruption : corruptions) {
+                ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone());
+                corrupted.putInt(corruption[0], corruption[1]);
+                Files.write(path, corrupted.array());
+                try {
+                    ExpressionStore.open(path);
+                    System.err.println("test failed: store with " + corruption[1] + " at " + corruption[0] + " is opened");
+                    successful = false;
+                } catch (RuntimeException e) {
+                    successful &= e.getMessage().startsWith("corrupted expression store");
+                }
+            }
+            if (successful) {
+                System.out.println("test successful: store of " + store.size() + " expressions");
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void testValidate(String formula, Set<String> knownVariables, ErrorCode errorCode, int offset) {
+        ValidationResult result = Expression.validate(formula, knownVariables);
+        if (result.getErrorCode() != errorCode || result.getOffset() != offset) {
+            System.err.println("test failed (validate): " + formula + " -> " + result + " != " + errorCode + " at " + offset);
         } else {
-            System.out.println("test successful: " + formula + " == " + answer);
+            System.out.println("test successful: validate " + formula + " -> " + result);
+        }
+    }
+
+    private static void testCsv(String formula, String csv, String answer) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new CsvEvaluator(new Expression(formula)).evaluate(
+                Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))), Channels.newChannel(output));
+        String result = output.toString(StandardCharsets.UTF_8);
+        if (!result.equals(answer)) {
+            System.err.println("test failed (csv): " + formula + " = " + result + " != " + answer);
+        } else {
+            System.out.println("test successful: csv " + formula);
         }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("metrics")) {
+            testMetrics();
+            return;
+        }
         test("3*a+5", Map.of("a", 8.0, "b", 11.0, "c", 20.0, "d", 17.0), 29.0);
         test("1/2*(a)^2+3*a-4", Map.of("a", 8.0, "b", 11.0, "c", 20.0, "d", 17.0), 52.0);
         test("3*b+5", Map.of("a", 8.0, "b", 11.0, "c", 20.0, "d", 17.0), 38.0);
@@ -77,6 +720,38 @@ public class Main {
         test("0.5(5(10-b/2)*0.5-a*10*0.5)/(b/2)", Map.of("a", 1.0, "b", 0.5), 38.75);
         test("0.5ab*6.28*c/(60*2*0.4*100*(0.5+0.75))", Map.of("a", 61.0, "b", 0.3, "c", 905.0), 8.667185);
         test("2 * a", Map.of("a", 2.0), 4);
+        test("(".repeat(24) + "a+1" + ")^2".repeat(24), Map.of("a", 0.0), 1.0);
+        test("if(a>b, a-b, b-a)+clamp(a,0,5)+min(a,b)+max(a,b)+abs(-a)", Map.of("a", 8.0, "b", 11.0), 35.0);
+        test("if(a<=b, sqrt(a)*sin(b), log(a,b))", Map.of("a", 4.0, "b", 9.0), 2 * Math.sin(9));
+        test("if(a-2, 1/sqrt(a-2), 0)+if(b, 1, 2)", Map.of("a", 2.0, "b", 0.0), 2.0);
+        test("(a==b)+(a!=b)+2(a<b)+4(a>=b)+8(a=a)+(1+2<4)", Map.of("a", 2.0, "b", 3.0), 12.0);
+
+        testConditional();
+        testDerivatives();
+        testLongFormulas();
+        testDepth();
+
+        testValidate("0.5ab*c", Set.of("a", "b", "c"), ErrorCode.NONE, -1);
+        testValidate("2*(a+b", Set.of("a", "b"), ErrorCode.UNEXPECTED_END, 6);
+        testValidate("log(a)+1", Set.of("a"), ErrorCode.MISSING_COMMA, 5);
+        testValidate("1..2+a", Set.of("a"), ErrorCode.INVALID_NUMBER, 0);
+        testValidate("a*x+1", Set.of("a"), ErrorCode.UNKNOWN_VARIABLE, 2);
+        testValidate("if(a>=b,a,b)", Set.of("a", "b"), ErrorCode.NONE, -1);
+        testValidate("clamp(a,b)", Set.of("a", "b"), ErrorCode.MISSING_COMMA, 9);
+        testValidate("a!b", Set.of("a", "b"), ErrorCode.UNEXPECTED_TOKEN, 1);
+        testValidate("!a", Set.of("a"), ErrorCode.UNEXPECTED_TOKEN, 0);
+
+        testCsv("1/2*(b)^2+3*b-4", "id,a,b\r\n1,8,11\r\n2,\"-0.5\",1.25e1\r\n3,0,\n", "result\n89.5\n111.625\nNaN\n");
+
+        testCache();
+        testGenerated();
+        testCompact();
+        testDoubleParser();
+        testParallel();
+        testIncremental();
+        testMetricsProcess();
+        testFastMath();
+        testStore(List.of("3*a+5", "2*sqrt((a)^3+a+25)", "0.5ab*6.28*c/(60*2*0.4*100*(0.5+0.75))", "-a/2", "log(a,b)"), Map.of("a", 61.0, "b", 0.3, "c", 905.0));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression;
+
+import yancey.expression.ast.Expression;
+import yancey.expression.lexer.Lexer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded, thread-safe cache of parsed expressions keyed by formula text.
+ * <p>
+ * Lookups only touch a {@link ConcurrentHashMap} and a per-entry flag. Eviction uses the CLOCK
+ * (second chance) policy: entries are queued in insertion order, and an entry that was read since
+ * the hand last passed it is moved to the back of the queue instead of being evicted.
+ */
+public class ExpressionCache {
+
+    /**
+     * Removes the spaces at both ends of the formula that the lexer skips, which never changes its meaning.
+     * Other whitespace is kept, like the spaces inside a formula, since {@code "2 3"} is a product while {@code "23"}
+     * is a number, and the spaces after a variable name at the end, which the lexer reads as part of the name.
+     */
+    public static final UnaryOperator<String> STRIP = ExpressionCache::strip;
+
+    private final int maximumSize;
+    private final UnaryOperator<String> keyNormalizer;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public ExpressionCache(int maximumSize) {
+        this(maximumSize, UnaryOperator.identity());
+    }
+
+    /**
+     * Create a cache whose key of a formula is keyNormalizer applied to it. The normalizer must only map formulas
+     * with the same meaning to one key, since the cached expression is parsed from the formula that missed first.
+     */
+    public ExpressionCache(int maximumSize, UnaryOperator<String> keyNormalizer) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximum size must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.keyNormalizer = keyNormalizer;
+    }
+
+    /**
+     * Get the expression of the formula, parsing it if it is not cached.
+     * Formulas that fail to parse are not cached.
+     */
+    public Expression get(String formula) {
+        String key = keyNormalizer.apply(formula);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.markReferenced();
+            hitCount.increment();
+            return entry.expression;
+        }
+        missCount.increment();
+        Entry newEntry = new Entry(key, new Expression(formula));
+        entry = entries.putIfAbsent(key, newEntry);
+        if (entry != null) {
+            entry.markReferenced();
+            return entry.expression;
+        }
+        clock.offer(newEntry);
+        if (size.incrementAndGet() > maximumSize) {
+            evict();
+        }
+        return newEntry.expression;
+    }
+
+    public void invalidateAll() {
+        Entry entry;
+        while ((entry = clock.poll()) != null) {
+            if (entries.remove(entry.key, entry)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private void evict() {
+        while (size.get() > maximumSize) {
+            Entry entry = clock.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(entry);
+            } else if (entries.remove(entry.key, entry)) {
+                size.decrementAndGet();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private static String strip(String formula) {
+        int start = 0;
+        while (start < formula.length() && formula.charAt(start) == ' ') {
+            start++;
+        }
+        int end = formula.length();
+        while (end > start && formula.charAt(end - 1) == ' ') {
+            end--;
+        }
+        // the last token runs back to an operator, it is a variable name unless it holds only numbers
+        for (int i = end - 1; i >= start && !Lexer.isOperator(formula.charAt(i)); i--) {
+            char character = formula.charAt(i);
+            if (character != ' ' && character != '.' && (character < '0' || character > '9')) {
+                end = formula.length();
+                break;
+            }
+        }
+        return start == 0 && end == formula.length() ? formula : formula.substring(start, end);
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private final Expression expression;
+        private volatile boolean referenced;
+
+        private Entry(String key, Expression expression) {
+            this.key = key;
+            this.expression = expression;
+        }
+
+        private void markReferenced() {
+            // skip the volatile write when it is already set, so hot entries are not written on every hit
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast;
+
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.diff.Derivative;
+import yancey.expression.fastmath.FastMath;
+import yancey.expression.fastmath.FastMathNode;
+import yancey.expression.metrics.ExpressionMetrics;
+import yancey.expression.optimizer.Optimizer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression whose variables have been resolved to slots of a fixed variable layout.
+ * The value of the i-th variable name is read from index i of the array passed to {@link #calculate(double[])}.
+ */
+public class BoundExpression {
+
+    private final BaseNode root;
+    private final List<String> variableNames;
+    private final ExpressionMetrics.Profile profile;
+    private final FastMath.Precision precision;
+
+    BoundExpression(BaseNode root, List<String> variableNames, ExpressionMetrics.Profile profile, FastMath.Precision precision) {
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < variableNames.size(); i++) {
+            if (slots.put(variableNames.get(i), i) != null) {
+                throw new RuntimeException("duplicate variable name: " + variableNames.get(i));
+            }
+        }
+        // the optimizer rebuilds nodes with the exact functions, so the fast ones are put back afterwards
+        BaseNode optimized = Optimizer.optimize(root.bind(slots));
+        this.root = precision == null ? optimized : FastMathNode.rewrite(optimized, precision);
+        this.variableNames = List.copyOf(variableNames);
+        this.profile = profile;
+        this.precision = precision;
+    }
+
+    public BaseNode getRoot() {
+        return root;
+    }
+
+    public List<String> getVariableNames() {
+        return variableNames;
+    }
+
+    public double calculate(double[] values) {
+        if (!ExpressionMetrics.ENABLED) {
+            return root.calculate(values);
+        }
+        long start = System.nanoTime();
+        double result = root.calculate(values);
+        ExpressionMetrics.onEvaluate(profile, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * The symbolic derivative of this expression for one of its variables, bound to the same layout.
+     */
+    public BoundExpression derivative(String variableName) {
+        int slot = variableNames.indexOf(variableName);
+        if (slot < 0) {
+            throw new RuntimeException("unknown variable name: " + variableName);
+        }
+        return new BoundExpression(Derivative.derive(root, slot), variableNames, null, precision);
+    }
+
+}
@@ -8,21 +8,116 @@
 package yancey.expression.ast;
 
 import yancey.expression.ast.node.BaseNode;
+import yancey.expression.fastmath.FastMath;
+import yancey.expression.fastmath.FastMathNode;
 import yancey.expression.lexer.Lexer;
+import yancey.expression.lexer.TokenBuffer;
+import yancey.expression.metrics.ExpressionMetrics;
+import yancey.expression.optimizer.Optimizer;
+import yancey.expression.parser.ParseException;
 import yancey.expression.parser.Parser;
+import yancey.expression.parser.ValidationResult;
+import yancey.expression.parser.Validator;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Expression {
 
+    private static final ThreadLocal<Validator> VALIDATOR = ThreadLocal.withInitial(Validator::new);
+
     private final BaseNode root;
+    private final ExpressionMetrics.Profile profile;
+    private final FastMath.Precision precision;
 
     public Expression(String string) {
-        this.root = Parser.parse(Lexer.lex(string));
+        this(string, true);
+    }
+
+    /**
+     * Parse an expression. Without strict mode the optimizer may rewrite it in ways
+     * that change the last bit of some results, see {@link Optimizer}.
+     */
+    public Expression(String string, boolean strict) {
+        this(string, strict, Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Parse an expression whose brackets, function calls and unary minus signs may be nested up to maxDepth levels.
+     *
+     * @throws ParseException if the string is not a valid expression or is nested deeper than maxDepth
+     */
+    public Expression(String string, boolean strict, int maxDepth) {
+        long start = ExpressionMetrics.ENABLED ? System.nanoTime() : 0;
+        this.root = Optimizer.optimize(Parser.parse(Lexer.lex(string, new TokenBuffer()), maxDepth), strict);
+        if (ExpressionMetrics.ENABLED) {
+            this.profile = ExpressionMetrics.profile(string, root);
+            ExpressionMetrics.onParse(profile, System.nanoTime() - start);
+        } else {
+            this.profile = null;
+        }
+        this.precision = null;
+    }
+
+    /**
+     * Create an expression from an already parsed tree, e.g. a deserialized one.
+     */
+    public Expression(BaseNode root) {
+        this.root = root;
+        this.profile = ExpressionMetrics.ENABLED ? ExpressionMetrics.profile(root) : null;
+        this.precision = null;
+    }
+
+    private Expression(BaseNode root, ExpressionMetrics.Profile profile, FastMath.Precision precision) {
+        this.root = root;
+        this.profile = profile;
+        this.precision = precision;
+    }
+
+    /**
+     * Check that the string is an expression of the known variables without throwing.
+     */
+    public static ValidationResult validate(CharSequence string, Set<String> knownVariables) {
+        return VALIDATOR.get().validate(string, knownVariables);
+    }
+
+    public BaseNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Get a copy of this expression that evaluates sin, cos, exp, ln, log and pow with the approximations
+     * of {@link FastMath}, whose error bounds are listed there. Only {@link #calculate(Map)} and
+     * {@link BoundExpression#calculate(double[])} use them, the compiled and batch evaluators stay exact.
+     */
+    public Expression fastMath(FastMath.Precision precision) {
+        return new Expression(FastMathNode.rewrite(root, precision), profile, precision);
+    }
+
+    /**
+     * Get the precision of the fast math mode, or null for the default strict mode.
+     */
+    public FastMath.Precision getPrecision() {
+        return precision;
     }
 
     public double calculate(Map<String, Double> variables) {
-        return root.calculate(variables);
+        if (!ExpressionMetrics.ENABLED) {
+            return root.calculate(variables);
+        }
+        long start = System.nanoTime();
+        double result = root.calculate(variables);
+        ExpressionMetrics.onEvaluate(profile, System.nanoTime() - start);
+        return result;
+    }
+
+    public BoundExpression bind(String... variableNames) {
+        return bind(List.of(variableNames));
+    }
+
+    public BoundExpression bind(List<String> variableNames) {
+        return new BoundExpression(root, variableNames, profile, precision);
     }
 
 }
@@ -10,5 +10,15 @@ package yancey.expression.ast.node;
 import java.util.Map;
 
 public abstract class BaseNode {
+
     public abstract double calculate(Map<String, Double> variables);
+
+    public abstract double calculate(double[] values);
+
+    /**
+     * Resolve every variable of this node to a slot of the given layout.
+     * The returned node can only be calculated by {@link #calculate(double[])}.
+     */
+    public abstract BaseNode bind(Map<String, Integer> slots);
+
 }
@@ -0,0 +1,34 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.List;
+
+/**
+ * A function of two operands that reads them from fields instead of the argument list.
+ */
+public abstract class BinaryNode extends FunctionNode {
+
+    protected final BaseNode left;
+    protected final BaseNode right;
+
+    protected BinaryNode(Type type, BaseNode left, BaseNode right) {
+        super(type, List.of(left, right));
+        this.left = left;
+        this.right = right;
+    }
+
+    public BaseNode getLeft() {
+        return left;
+    }
+
+    public BaseNode getRight() {
+        return right;
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code clamp(x, min, max)}, see {@link FunctionNode#clamp(double, double, double)}.
+ */
+public final class ClampNode extends FunctionNode {
+
+    private final BaseNode x;
+    private final BaseNode min;
+    private final BaseNode max;
+
+    public ClampNode(BaseNode x, BaseNode min, BaseNode max) {
+        super(Type.CLAMP, List.of(x, min, max));
+        this.x = x;
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return clamp(x.calculate(variables), min.calculate(variables), max.calculate(variables));
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return clamp(x.calculate(values), min.calculate(values), max.calculate(values));
+    }
+
+}
@@ -0,0 +1,34 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.Map;
+
+/**
+ * A comparison of two operands, whose value is 1 if it holds and 0 otherwise.
+ */
+public final class ComparisonNode extends BinaryNode {
+
+    public ComparisonNode(Type type, BaseNode left, BaseNode right) {
+        super(type, left, right);
+        if (!isComparison(type)) {
+            throw new RuntimeException("not a comparison: " + type);
+        }
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return compare(getType(), left.calculate(variables), right.calculate(variables));
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return compare(getType(), left.calculate(values), right.calculate(values));
+    }
+
+}
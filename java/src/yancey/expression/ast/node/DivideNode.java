@@ -0,0 +1,28 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.Map;
+
+public final class DivideNode extends BinaryNode {
+
+    public DivideNode(BaseNode left, BaseNode right) {
+        super(Type.DIVIDE, left, right);
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return left.calculate(variables) / right.calculate(variables);
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return left.calculate(values) / right.calculate(values);
+    }
+
+}
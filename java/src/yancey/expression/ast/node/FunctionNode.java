@@ -7,6 +7,9 @@
 
 package yancey.expression.ast.node;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -27,6 +30,20 @@ public class FunctionNode extends BaseNode {
         SQRT,
         EXP,
         LOG,
+        NEGATE,
+        LN,
+        LESS,
+        LESS_EQUAL,
+        GREATER,
+        GREATER_EQUAL,
+        EQUAL,
+        NOT_EQUAL,
+        IF,
+        MIN,
+        MAX,
+        ABS,
+        CLAMP,
+        SQUARE,
     }
 
     private final Type type;
@@ -37,6 +54,59 @@ public class FunctionNode extends BaseNode {
         this.arguments = arguments;
     }
 
+    /**
+     * Get the number of arguments of the function.
+     */
+    public static int getArgumentCount(Type type) {
+        return switch (type) {
+            case ADD, MINUS, MULTIPY, DIVIDE, POW, LOG, LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL, MIN, MAX -> 2;
+            case IF, CLAMP -> 3;
+            default -> 1;
+        };
+    }
+
+    /**
+     * Whether the function is a comparison, whose value is 1 if it holds and 0 otherwise.
+     */
+    public static boolean isComparison(Type type) {
+        return switch (type) {
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Create the specialised node for the function, e.g. an {@link AddNode} for {@link Type#ADD}.
+     * A multiplication of a node by itself becomes a {@link SquareNode}.
+     */
+    public static FunctionNode of(Type type, List<BaseNode> arguments) {
+        return switch (type) {
+            case ADD -> new AddNode(arguments.get(0), arguments.get(1));
+            case MINUS -> new SubtractNode(arguments.get(0), arguments.get(1));
+            case MULTIPY -> arguments.get(0) == arguments.get(1) ?
+                    new SquareNode(arguments.get(0)) : new MultiplyNode(arguments.get(0), arguments.get(1));
+            case DIVIDE -> new DivideNode(arguments.get(0), arguments.get(1));
+            case POW -> new PowNode(arguments.get(0), arguments.get(1));
+            case NEGATE -> new NegateNode(arguments.get(0));
+            case SQUARE -> new SquareNode(arguments.get(0));
+            case LOG -> new FunctionNode(type, arguments);
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL -> new ComparisonNode(type, arguments.get(0), arguments.get(1));
+            case IF -> new IfNode(arguments.get(0), arguments.get(1), arguments.get(2));
+            case MIN -> new MinNode(arguments.get(0), arguments.get(1));
+            case MAX -> new MaxNode(arguments.get(0), arguments.get(1));
+            case CLAMP -> new ClampNode(arguments.get(0), arguments.get(1), arguments.get(2));
+            default -> new MathFunctionNode(type, arguments.get(0));
+        };
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<BaseNode> getArguments() {
+        return arguments;
+    }
+
     @Override
     public double calculate(Map<String, Double> variables) {
         return switch (type) {
@@ -55,7 +125,127 @@ public class FunctionNode extends BaseNode {
             case EXP -> Math.exp(arguments.get(0).calculate(variables));
             case LOG -> Math.log(arguments.get(0).calculate(variables)) /
                     Math.log(arguments.get(1).calculate(variables));
+            case NEGATE -> -arguments.get(0).calculate(variables);
+            case LN -> Math.log(arguments.get(0).calculate(variables));
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL ->
+                    compare(type, arguments.get(0).calculate(variables), arguments.get(1).calculate(variables));
+            case IF -> isTrue(arguments.get(0).calculate(variables)) ?
+                    arguments.get(1).calculate(variables) : arguments.get(2).calculate(variables);
+            case MIN -> Math.min(arguments.get(0).calculate(variables), arguments.get(1).calculate(variables));
+            case MAX -> Math.max(arguments.get(0).calculate(variables), arguments.get(1).calculate(variables));
+            case ABS -> Math.abs(arguments.get(0).calculate(variables));
+            case SQUARE -> {
+                double value = arguments.get(0).calculate(variables);
+                yield value * value;
+            }
+            case CLAMP -> clamp(arguments.get(0).calculate(variables), arguments.get(1).calculate(variables), arguments.get(2).calculate(variables));
         };
     }
 
+    @Override
+    public double calculate(double[] values) {
+        return switch (type) {
+            case ADD -> arguments.get(0).calculate(values) + arguments.get(1).calculate(values);
+            case MINUS -> arguments.get(0).calculate(values) - arguments.get(1).calculate(values);
+            case MULTIPY -> arguments.get(0).calculate(values) * arguments.get(1).calculate(values);
+            case DIVIDE -> arguments.get(0).calculate(values) / arguments.get(1).calculate(values);
+            case POW -> Math.pow(arguments.get(0).calculate(values), arguments.get(1).calculate(values));
+            case SIN -> Math.sin(arguments.get(0).calculate(values));
+            case COS -> Math.cos(arguments.get(0).calculate(values));
+            case TAN -> Math.tan(arguments.get(0).calculate(values));
+            case ASIN -> Math.asin(arguments.get(0).calculate(values));
+            case ACOS -> Math.acos(arguments.get(0).calculate(values));
+            case ATAN -> Math.atan(arguments.get(0).calculate(values));
+            case SQRT -> Math.sqrt(arguments.get(0).calculate(values));
+            case EXP -> Math.exp(arguments.get(0).calculate(values));
+            case LOG -> Math.log(arguments.get(0).calculate(values)) /
+                    Math.log(arguments.get(1).calculate(values));
+            case NEGATE -> -arguments.get(0).calculate(values);
+            case LN -> Math.log(arguments.get(0).calculate(values));
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL ->
+                    compare(type, arguments.get(0).calculate(values), arguments.get(1).calculate(values));
+            case IF -> isTrue(arguments.get(0).calculate(values)) ?
+                    arguments.get(1).calculate(values) : arguments.get(2).calculate(values);
+            case MIN -> Math.min(arguments.get(0).calculate(values), arguments.get(1).calculate(values));
+            case MAX -> Math.max(arguments.get(0).calculate(values), arguments.get(1).calculate(values));
+            case ABS -> Math.abs(arguments.get(0).calculate(values));
+            case SQUARE -> {
+                double value = arguments.get(0).calculate(values);
+                yield value * value;
+            }
+            case CLAMP -> clamp(arguments.get(0).calculate(values), arguments.get(1).calculate(values), arguments.get(2).calculate(values));
+        };
+    }
+
+    /**
+     * Calculate a comparison, which like the comparison operators of Java is false if either side is NaN,
+     * except for {@link Type#NOT_EQUAL}.
+     */
+    public static double compare(Type type, double a, double b) {
+        boolean result = switch (type) {
+            case LESS -> a < b;
+            case LESS_EQUAL -> a <= b;
+            case GREATER -> a > b;
+            case GREATER_EQUAL -> a >= b;
+            case EQUAL -> a == b;
+            case NOT_EQUAL -> a != b;
+            default -> throw new RuntimeException("not a comparison: " + type);
+        };
+        return result ? 1 : 0;
+    }
+
+    /**
+     * Whether the value counts as true for a condition, which is every value except 0 and -0, NaN included.
+     */
+    public static boolean isTrue(double value) {
+        return value != 0;
+    }
+
+    /**
+     * Limit x to [min, max] as {@code Math.min(Math.max(x, min), max)}, so max wins if min is greater than it.
+     */
+    public static double clamp(double x, double min, double max) {
+        return Math.min(Math.max(x, min), max);
+    }
+
+    /**
+     * Create a node of the same function with other arguments, which keeps what else the node holds.
+     */
+    public FunctionNode withArguments(List<BaseNode> arguments) {
+        return of(type, arguments);
+    }
+
+    /**
+     * Bind bottom up with an explicit stack, so that the depth of the tree is not limited by the thread stack.
+     */
+    @Override
+    public BaseNode bind(Map<String, Integer> slots) {
+        Map<BaseNode, BaseNode> bound = new IdentityHashMap<>();
+        ArrayDeque<FunctionNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            FunctionNode node = stack.peek();
+            if (bound.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (int i = node.arguments.size() - 1; i >= 0; i--) {
+                if (node.arguments.get(i) instanceof FunctionNode argument && !bound.containsKey(argument)) {
+                    stack.push(argument);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                List<BaseNode> boundArguments = new ArrayList<>(node.arguments.size());
+                for (BaseNode argument : node.arguments) {
+                    boundArguments.add(argument instanceof FunctionNode ? bound.get(argument) : argument.bind(slots));
+                }
+                bound.put(node, node.withArguments(boundArguments));
+            }
+        }
+        return bound.get(this);
+    }
+
 }
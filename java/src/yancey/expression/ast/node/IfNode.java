@@ -0,0 +1,87 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code if(condition, then, otherwise)}, which only calculates the branch that is taken.
+ */
+public final class IfNode extends FunctionNode {
+
+    private static final int MAX_SELECT_NODES = 8;
+
+    private final BaseNode condition;
+    private final BaseNode then;
+    private final BaseNode otherwise;
+
+    public IfNode(BaseNode condition, BaseNode then, BaseNode otherwise) {
+        super(Type.IF, List.of(condition, then, otherwise));
+        this.condition = condition;
+        this.then = then;
+        this.otherwise = otherwise;
+    }
+
+    /**
+     * Whether both branches are cheap enough to be calculated unconditionally and selected without a jump:
+     * together at most {@value #MAX_SELECT_NODES} nodes of numbers, variables, additions, subtractions,
+     * multiplications, squares, negations, comparisons, min, max and abs. Such a select can not be mispredicted,
+     * while a branch skips the work of the other side.
+     */
+    public static boolean isSelect(BaseNode then, BaseNode otherwise) {
+        return countCheapNodes(then, MAX_SELECT_NODES) + countCheapNodes(otherwise, MAX_SELECT_NODES) <= MAX_SELECT_NODES;
+    }
+
+    /**
+     * Count the nodes of a cheap tree, or return more than limit if the tree is not cheap or has more nodes.
+     */
+    private static int countCheapNodes(BaseNode node, int limit) {
+        if (!(node instanceof FunctionNode functionNode)) {
+            return 1;
+        }
+        switch (functionNode.getType()) {
+            case ADD, MINUS, MULTIPY, NEGATE, LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL, MIN, MAX, ABS, SQUARE -> {
+            }
+            default -> {
+                return limit + 1;
+            }
+        }
+        int count = 1;
+        for (BaseNode argument : functionNode.getArguments()) {
+            count += countCheapNodes(argument, limit - count);
+            if (count > limit) {
+                return count;
+            }
+        }
+        return count;
+    }
+
+    public BaseNode getCondition() {
+        return condition;
+    }
+
+    public BaseNode getThen() {
+        return then;
+    }
+
+    public BaseNode getOtherwise() {
+        return otherwise;
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return isTrue(condition.calculate(variables)) ? then.calculate(variables) : otherwise.calculate(variables);
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return isTrue(condition.calculate(values)) ? then.calculate(values) : otherwise.calculate(values);
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A one-argument function of {@link Math}, such as sin or sqrt.
+ */
+public final class MathFunctionNode extends UnaryNode {
+
+    public MathFunctionNode(Type type, BaseNode operand) {
+        super(type, List.of(operand), operand);
+        switch (type) {
+            case SIN, COS, TAN, ASIN, ACOS, ATAN, SQRT, EXP, LN, ABS -> {
+            }
+            default -> throw new RuntimeException("not a math function: " + type);
+        }
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return apply(operand.calculate(variables));
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return apply(operand.calculate(values));
+    }
+
+    private double apply(double value) {
+        return switch (getType()) {
+            case SIN -> Math.sin(value);
+            case COS -> Math.cos(value);
+            case TAN -> Math.tan(value);
+            case ASIN -> Math.asin(value);
+            case ACOS -> Math.acos(value);
+            case ATAN -> Math.atan(value);
+            case SQRT -> Math.sqrt(value);
+            case EXP -> Math.exp(value);
+            case ABS -> Math.abs(value);
+            default -> Math.log(value);
+        };
+    }
+
+}
@@ -0,0 +1,29 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.List;
+import java.util.Map;
+
+public final class NegateNode extends UnaryNode {
+
+    public NegateNode(BaseNode operand) {
+        super(Type.NEGATE, List.of(operand), operand);
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return -operand.calculate(variables);
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return -operand.calculate(values);
+    }
+
+}
@@ -17,9 +17,23 @@ public class NumberNode extends BaseNode {
         this.number = number;
     }
 
+    public double getNumber() {
+        return number;
+    }
+
     @Override
     public double calculate(Map<String, Double> variables) {
         return number;
     }
 
+    @Override
+    public double calculate(double[] values) {
+        return number;
+    }
+
+    @Override
+    public BaseNode bind(Map<String, Integer> slots) {
+        return this;
+    }
+
 }
@@ -0,0 +1,28 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.Map;
+
+public final class PowNode extends BinaryNode {
+
+    public PowNode(BaseNode left, BaseNode right) {
+        super(Type.POW, left, right);
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return Math.pow(left.calculate(variables), right.calculate(variables));
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return Math.pow(left.calculate(values), right.calculate(values));
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.Map;
+
+public class SlotNode extends BaseNode {
+
+    private final String variableName;
+    private final int slot;
+
+    public SlotNode(String variableName, int slot) {
+        this.variableName = variableName;
+        this.slot = slot;
+    }
+
+    public String getVariableName() {
+        return variableName;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        Double result = variables.get(variableName);
+        if (result == null) {
+            throw new RuntimeException("unknown variable name: " + variableName);
+        }
+        return result;
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return values[slot];
+    }
+
+    @Override
+    public BaseNode bind(Map<String, Integer> slots) {
+        return new VariableNode(variableName).bind(slots);
+    }
+
+}
@@ -0,0 +1,35 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code x*x} that evaluates its operand once, which is bit-identical to {@code x^2}. It has the operand as its only
+ * argument, so backends that walk the arguments also visit it once.
+ */
+public final class SquareNode extends UnaryNode {
+
+    public SquareNode(BaseNode operand) {
+        super(Type.SQUARE, List.of(operand), operand);
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        double value = operand.calculate(variables);
+        return value * value;
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        double value = operand.calculate(values);
+        return value * value;
+    }
+
+}
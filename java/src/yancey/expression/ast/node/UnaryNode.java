@@ -0,0 +1,28 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.ast.node;
+
+import java.util.List;
+
+/**
+ * A function of one operand that reads it from a field instead of the argument list.
+ */
+public abstract class UnaryNode extends FunctionNode {
+
+    protected final BaseNode operand;
+
+    protected UnaryNode(Type type, List<BaseNode> arguments, BaseNode operand) {
+        super(type, arguments);
+        this.operand = operand;
+    }
+
+    public BaseNode getOperand() {
+        return operand;
+    }
+
+}
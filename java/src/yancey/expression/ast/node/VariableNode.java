@@ -7,6 +7,8 @@
 
 package yancey.expression.ast.node;
 
+import yancey.expression.metrics.ExpressionMetrics;
+
 import java.util.Map;
 import java.util.Objects;
 
@@ -18,6 +20,10 @@ public class VariableNode extends BaseNode {
         this.variableName = variableName;
     }
 
+    public String getVariableName() {
+        return variableName;
+    }
+
     @Override
     public double calculate(Map<String, Double> variables) {
         Double result = variables.get(variableName);
@@ -48,7 +54,52 @@ public class VariableNode extends BaseNode {
                 return result;
             }
         }
+        if (ExpressionMetrics.ENABLED) {
+            ExpressionMetrics.onUnknownVariable(variableName);
+        }
         throw new RuntimeException("unknown variable name: " + variableName);
     }
 
+    @Override
+    public double calculate(double[] values) {
+        throw new RuntimeException("unbound variable name: " + variableName);
+    }
+
+    @Override
+    public BaseNode bind(Map<String, Integer> slots) {
+        BaseNode result = bindName(variableName, slots);
+        if (result != null) {
+            return result;
+        }
+        if (variableName.length() > 1) {
+            for (int i = 0; i < variableName.length(); i++) {
+                BaseNode result0 = bindName(String.valueOf(variableName.charAt(i)), slots);
+                if (result0 == null) {
+                    result = null;
+                    break;
+                }
+                result = result == null ? result0 : new MultiplyNode(result, result0);
+            }
+            if (result != null) {
+                return result;
+            }
+        }
+        if (ExpressionMetrics.ENABLED) {
+            ExpressionMetrics.onUnknownVariable(variableName);
+        }
+        throw new RuntimeException("unknown variable name: " + variableName);
+    }
+
+    private static BaseNode bindName(String variableName, Map<String, Integer> slots) {
+        Integer slot = slots.get(variableName);
+        if (slot != null) {
+            return new SlotNode(variableName, slot);
+        } else if (Objects.equals(variableName, "e")) {
+            return new NumberNode(Math.E);
+        } else if (Objects.equals(variableName, "pi")) {
+            return new NumberNode(Math.PI);
+        }
+        return null;
+    }
+
 }
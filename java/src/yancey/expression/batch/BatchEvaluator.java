@@ -0,0 +1,344 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.batch;
+
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.SlotNode;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates a bound expression over columns of values, one operator at a time for a block of rows.
+ * Column {@code i} holds the values of the i-th variable of the bound expression.
+ * <p>
+ * The inner loops are plain loops over primitive arrays which the JIT can vectorize. {@code if} calculates both
+ * branches for the whole block and selects per row, and clamp is a max followed by a min.
+ * An evaluator keeps scratch buffers and is not thread-safe, so create one per thread.
+ */
+public class BatchEvaluator {
+
+    public static final int BLOCK_SIZE = 1024;
+
+    private static final int COLUMN = 0;
+    private static final int REGISTER = 1;
+    private static final int CONSTANT = 2;
+
+    private final int variableCount;
+    private final FunctionNode.Type[] types;
+    private final int[] destinations;
+    private final int[] sourceKinds;
+    private final int[] sourceIndexes;
+    private final int resultKind;
+    private final int resultIndex;
+    private final double[][] registers;
+    private final double[][] constants;
+    private final double[][] bufferColumns;
+
+    public BatchEvaluator(BoundExpression expression) {
+        this.variableCount = expression.getVariableNames().size();
+        Compiler compiler = new Compiler();
+        long result = compiler.compile(expression.getRoot());
+        int count = compiler.types.size();
+        this.types = compiler.types.toArray(new FunctionNode.Type[0]);
+        this.destinations = new int[count];
+        this.sourceKinds = new int[count * 3];
+        this.sourceIndexes = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            destinations[i] = compiler.destinations.get(i);
+            for (int j = i * 3; j < i * 3 + 3; j++) {
+                sourceKinds[j] = kind(compiler.sources.get(j));
+                sourceIndexes[j] = index(compiler.sources.get(j));
+            }
+        }
+        this.resultKind = kind(result);
+        this.resultIndex = index(result);
+        this.registers = new double[compiler.registerCount][BLOCK_SIZE];
+        this.constants = new double[compiler.constants.size()][BLOCK_SIZE];
+        for (int i = 0; i < constants.length; i++) {
+            Arrays.fill(constants[i], compiler.constants.get(i));
+        }
+        this.bufferColumns = new double[variableCount][];
+    }
+
+    public void calculate(double[][] columns, double[] output) {
+        calculate(columns, output, 0, output.length);
+    }
+
+    /**
+     * Calculate the rows in [from, to), writing the result of row i to output[i].
+     */
+    public void calculate(double[][] columns, double[] output, int from, int to) {
+        if (columns.length < variableCount) {
+            throw new RuntimeException("require " + variableCount + " columns");
+        }
+        for (int i = 0; i < variableCount; i++) {
+            if (columns[i].length < to) {
+                throw new RuntimeException("column " + i + " is too short");
+            }
+        }
+        for (int start = from; start < to; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, to - start);
+            calculateBlock(columns, start, length);
+            System.arraycopy(array(resultKind, resultIndex, columns), offset(resultKind, start), output, start, length);
+        }
+    }
+
+    /**
+     * Calculate the remaining rows of the column buffers into the output buffer.
+     * Every column must have at least as many remaining values as the output buffer.
+     */
+    public void calculate(DoubleBuffer[] columns, DoubleBuffer output) {
+        if (columns.length < variableCount) {
+            throw new RuntimeException("require " + variableCount + " columns");
+        }
+        for (int i = 0; i < variableCount; i++) {
+            if (columns[i].remaining() < output.remaining()) {
+                throw new RuntimeException("column " + i + " is too short");
+            }
+            if (bufferColumns[i] == null) {
+                bufferColumns[i] = new double[BLOCK_SIZE];
+            }
+        }
+        while (output.hasRemaining()) {
+            int length = Math.min(BLOCK_SIZE, output.remaining());
+            for (int i = 0; i < variableCount; i++) {
+                columns[i].get(bufferColumns[i], 0, length);
+            }
+            calculateBlock(bufferColumns, 0, length);
+            output.put(array(resultKind, resultIndex, bufferColumns), offset(resultKind, 0), length);
+        }
+    }
+
+    private void calculateBlock(double[][] columns, int start, int length) {
+        for (int i = 0; i < types.length; i++) {
+            int kind0 = sourceKinds[i * 3];
+            int kind1 = sourceKinds[i * 3 + 1];
+            int kind2 = sourceKinds[i * 3 + 2];
+            double[] a = array(kind0, sourceIndexes[i * 3], columns);
+            double[] b = array(kind1, sourceIndexes[i * 3 + 1], columns);
+            double[] c = array(kind2, sourceIndexes[i * 3 + 2], columns);
+            int ao = offset(kind0, start);
+            int bo = offset(kind1, start);
+            int co = offset(kind2, start);
+            double[] out = registers[destinations[i]];
+            switch (types[i]) {
+                case ADD -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] + b[bo + j];
+                    }
+                }
+                case MINUS -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] - b[bo + j];
+                    }
+                }
+                case MULTIPY -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] * b[bo + j];
+                    }
+                }
+                case DIVIDE -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] / b[bo + j];
+                    }
+                }
+                case POW -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.pow(a[ao + j], b[bo + j]);
+                    }
+                }
+                case SIN -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.sin(a[ao + j]);
+                    }
+                }
+                case COS -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.cos(a[ao + j]);
+                    }
+                }
+                case TAN -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.tan(a[ao + j]);
+                    }
+                }
+                case ASIN -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.asin(a[ao + j]);
+                    }
+                }
+                case ACOS -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.acos(a[ao + j]);
+                    }
+                }
+                case ATAN -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.atan(a[ao + j]);
+                    }
+                }
+                case SQRT -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.sqrt(a[ao + j]);
+                    }
+                }
+                case EXP -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.exp(a[ao + j]);
+                    }
+                }
+                case LOG -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.log(a[ao + j]) / Math.log(b[bo + j]);
+                    }
+                }
+                case NEGATE -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = -a[ao + j];
+                    }
+                }
+                case LN -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.log(a[ao + j]);
+                    }
+                }
+                case LESS -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] < b[bo + j] ? 1 : 0;
+                    }
+                }
+                case LESS_EQUAL -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] <= b[bo + j] ? 1 : 0;
+                    }
+                }
+                case GREATER -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] > b[bo + j] ? 1 : 0;
+                    }
+                }
+                case GREATER_EQUAL -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] >= b[bo + j] ? 1 : 0;
+                    }
+                }
+                case EQUAL -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] == b[bo + j] ? 1 : 0;
+                    }
+                }
+                case NOT_EQUAL -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] != b[bo + j] ? 1 : 0;
+                    }
+                }
+                case IF -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] != 0 ? b[bo + j] : c[co + j];
+                    }
+                }
+                case MIN -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.min(a[ao + j], b[bo + j]);
+                    }
+                }
+                case MAX -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.max(a[ao + j], b[bo + j]);
+                    }
+                }
+                case ABS -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = Math.abs(a[ao + j]);
+                    }
+                }
+                case SQUARE -> {
+                    for (int j = 0; j < length; j++) {
+                        out[j] = a[ao + j] * a[ao + j];
+                    }
+                }
+                case CLAMP -> throw new RuntimeException("clamp is compiled to max and min");
+            }
+        }
+    }
+
+    private double[] array(int kind, int index, double[][] columns) {
+        return switch (kind) {
+            case COLUMN -> columns[index];
+            case REGISTER -> registers[index];
+            default -> constants[index];
+        };
+    }
+
+    private static int offset(int kind, int start) {
+        return kind == COLUMN ? start : 0;
+    }
+
+    private static long source(int kind, int index) {
+        return ((long) kind << 32) | index;
+    }
+
+    private static int kind(long source) {
+        return (int) (source >>> 32);
+    }
+
+    private static int index(long source) {
+        return (int) source;
+    }
+
+    private static class Compiler {
+
+        private final List<FunctionNode.Type> types = new ArrayList<>();
+        private final List<Integer> destinations = new ArrayList<>();
+        private final List<Long> sources = new ArrayList<>();
+        private final List<Double> constants = new ArrayList<>();
+        private int nextRegister;
+        private int registerCount;
+
+        /**
+         * Emit the instructions of the node and return where its values can be read from.
+         * Registers above the returned one are free again once this returns.
+         */
+        long compile(BaseNode node) {
+            if (node instanceof NumberNode numberNode) {
+                constants.add(numberNode.getNumber());
+                return source(CONSTANT, constants.size() - 1);
+            } else if (node instanceof SlotNode slotNode) {
+                return source(COLUMN, slotNode.getSlot());
+            } else if (node instanceof FunctionNode functionNode && functionNode.getType() == FunctionNode.Type.CLAMP) {
+                List<BaseNode> arguments = functionNode.getArguments();
+                BaseNode max = FunctionNode.of(FunctionNode.Type.MAX, List.of(arguments.get(0), arguments.get(1)));
+                return compile(FunctionNode.of(FunctionNode.Type.MIN, List.of(max, arguments.get(2))));
+            } else if (node instanceof FunctionNode functionNode) {
+                int mark = nextRegister;
+                List<BaseNode> arguments = functionNode.getArguments();
+                long source0 = compile(arguments.get(0));
+                long source1 = arguments.size() > 1 ? compile(arguments.get(1)) : source0;
+                long source2 = arguments.size() > 2 ? compile(arguments.get(2)) : source0;
+                nextRegister = mark;
+                int destination = nextRegister++;
+                registerCount = Math.max(registerCount, nextRegister);
+                types.add(functionNode.getType());
+                destinations.add(destination);
+                sources.add(source0);
+                sources.add(source1);
+                sources.add(source2);
+                return source(REGISTER, destination);
+            }
+            throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.batch;
+
+import yancey.expression.ast.BoundExpression;
+
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.StreamSupport;
+
+/**
+ * Evaluates one bound expression over large column sets on several threads.
+ * <p>
+ * Rows are split into chunks whose boundaries are multiples of {@link BatchEvaluator#BLOCK_SIZE},
+ * so two workers never write the same cache line of the output. Each worker thread uses its own
+ * {@link BatchEvaluator} and scratch buffers, and row i is always written to output[i].
+ * An evaluator can be shared by any number of threads.
+ */
+public class ParallelEvaluator {
+
+    private static final int MIN_CHUNK_SIZE = BatchEvaluator.BLOCK_SIZE * 16;
+
+    private final BoundExpression expression;
+    private final ThreadLocal<BatchEvaluator> batchEvaluators;
+
+    public ParallelEvaluator(BoundExpression expression) {
+        this.expression = expression;
+        this.batchEvaluators = ThreadLocal.withInitial(() -> new BatchEvaluator(expression));
+    }
+
+    public void calculate(double[][] columns, double[] output) {
+        calculate(columns, output, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Calculate every row with fork/join tasks, idle workers of the pool steal the remaining chunks.
+     */
+    public void calculate(double[][] columns, double[] output, ForkJoinPool pool) {
+        int chunkSize = chunkSize(output.length, pool.getParallelism() * 4);
+        pool.invoke(new CalculateTask(columns, output, 0, output.length, chunkSize));
+    }
+
+    /**
+     * Calculate every row by submitting one task per chunk to the executor and waiting for all of them.
+     */
+    public void calculate(double[][] columns, double[] output, Executor executor, int parallelism) {
+        int chunkSize = chunkSize(output.length, parallelism);
+        int chunkCount = (output.length + chunkSize - 1) / chunkSize;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int from = i * chunkSize;
+            int to = Math.min(from + chunkSize, output.length);
+            futures[i] = CompletableFuture.runAsync(() -> batchEvaluators.get().calculate(columns, output, from, to), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Calculate a value for every row of the spliterator in parallel, in encounter order.
+     * Each row holds the values of the variables in the layout of the bound expression.
+     * <p>
+     * Unlike the column overloads, rows arrive one at a time, so each is calculated by
+     * {@link BoundExpression#calculate(double[])} and the per-worker batch buffers are not used.
+     */
+    public double[] calculate(Spliterator<double[]> rows) {
+        return StreamSupport.stream(rows, true).mapToDouble(expression::calculate).toArray();
+    }
+
+    private static int chunkSize(int rows, int chunkCount) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (rows + chunkCount - 1) / Math.max(chunkCount, 1));
+        return (chunkSize + BatchEvaluator.BLOCK_SIZE - 1) / BatchEvaluator.BLOCK_SIZE * BatchEvaluator.BLOCK_SIZE;
+    }
+
+    private class CalculateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] columns;
+        private final double[] output;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        private CalculateTask(double[][] columns, double[] output, int from, int to, int chunkSize) {
+            this.columns = columns;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                batchEvaluators.get().calculate(columns, output, from, to);
+                return;
+            }
+            int chunks = (to - from + chunkSize - 1) / chunkSize;
+            int middle = from + chunks / 2 * chunkSize;
+            invokeAll(new CalculateTask(columns, output, from, middle, chunkSize),
+                    new CalculateTask(columns, output, middle, to, chunkSize));
+        }
+
+    }
+
+}
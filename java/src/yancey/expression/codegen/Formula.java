@@ -0,0 +1,59 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate a class with a {@code public static double eval(...)} method for a fixed formula at compile time.
+ * The class is generated by {@link FormulaProcessor} in the package of the annotated type, and the build fails
+ * if the formula has a syntax error or an unknown variable.
+ * <pre>
+ * &#64;Formula(name = "Quadratic", value = "1/2*(b)^2+3*b-4", variables = {"b"})
+ * class Formulas {
+ * }
+ *
+ * double result = Quadratic.eval(11.0);
+ * </pre>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@Repeatable(Formula.List.class)
+public @interface Formula {
+
+    /**
+     * The simple name of the generated class.
+     */
+    String name();
+
+    String value();
+
+    /**
+     * The parameters of the eval method in order. By default every variable of the formula in the order
+     * they first appear, which treats a name like {@code ab} as one variable instead of a product.
+     */
+    String[] variables() default {};
+
+    /**
+     * Whether the generated code must be bit-identical to the interpreter, see {@link yancey.expression.optimizer.Optimizer}.
+     */
+    boolean strict() default true;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @Target(ElementType.TYPE)
+    @interface List {
+
+        Formula[] value();
+
+    }
+
+}
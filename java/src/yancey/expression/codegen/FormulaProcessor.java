@@ -0,0 +1,74 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.codegen;
+
+import yancey.expression.parser.ParseException;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the classes of {@link Formula} annotations. It is registered as a service,
+ * so javac runs it whenever this library is on the annotation processor path.
+ */
+@SupportedAnnotationTypes({"yancey.expression.codegen.Formula", "yancey.expression.codegen.Formula.List"})
+public class FormulaProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWithAny(Set.of(Formula.class, Formula.List.class))) {
+            String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+            for (Formula formula : element.getAnnotationsByType(Formula.class)) {
+                generate(element, packageName, formula);
+            }
+        }
+        return true;
+    }
+
+    private void generate(Element element, String packageName, Formula formula) {
+        String source;
+        try {
+            source = JavaSourceGenerator.generate(packageName, formula.name(), formula.value(), List.of(formula.variables()), formula.strict());
+        } catch (ParseException e) {
+            error(element, "syntax error in formula \"" + formula.value() + "\" at " + e.getOffset() + ": " + e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            error(element, "invalid formula \"" + formula.value() + "\": " + e.getMessage());
+            return;
+        }
+        String className = packageName.isEmpty() ? formula.name() : packageName + "." + formula.name();
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(className, element);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source);
+            }
+        } catch (IOException e) {
+            error(element, "can not write " + className + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
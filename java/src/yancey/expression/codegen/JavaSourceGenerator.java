@@ -0,0 +1,232 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.codegen;
+
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.Expression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.IfNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.SlotNode;
+import yancey.expression.ast.node.VariableNode;
+
+import javax.lang.model.SourceVersion;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the Java source of a class with a {@code public static double eval(...)} method for a formula.
+ * The method computes the optimized tree of the formula one node per local variable,
+ * so it calculates the same results as the interpreter. An {@code if} whose branches are not cheap enough for a
+ * conditional expression, see {@link IfNode#isSelect(BaseNode, BaseNode)}, becomes an if statement that only
+ * computes the branch that is taken.
+ */
+public class JavaSourceGenerator {
+
+    private final String[] parameters;
+    private final StringBuilder body = new StringBuilder();
+    private Map<BaseNode, String> locals = new IdentityHashMap<>();
+    private int localCount;
+    private String indent = "        ";
+
+    private JavaSourceGenerator(String[] parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Generate the source of a class, inferring the variables if variableNames is empty.
+     *
+     * @throws RuntimeException if the formula can not be parsed or uses an unknown variable
+     */
+    public static String generate(String packageName, String className, String formula, List<String> variableNames, boolean strict) {
+        if (!SourceVersion.isName(className) || className.contains(".")) {
+            throw new RuntimeException("invalid class name: " + className);
+        }
+        Expression expression = new Expression(formula, strict);
+        if (variableNames.isEmpty()) {
+            Set<String> names = new LinkedHashSet<>();
+            collectVariableNames(expression.getRoot(), names);
+            variableNames = List.copyOf(names);
+        }
+        BoundExpression boundExpression = expression.bind(variableNames);
+        String[] parameters = new String[variableNames.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            String name = variableNames.get(i);
+            parameters[i] = isParameterName(name) ? name : "p" + i;
+        }
+        JavaSourceGenerator generator = new JavaSourceGenerator(parameters);
+        String result = generator.emit(boundExpression.getRoot());
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(FormulaProcessor.class.getName()).append("\")\n");
+        source.append("public final class ").append(className).append(" {\n\n");
+        source.append("    public static final String FORMULA = ").append(stringLiteral(formula)).append(";\n\n");
+        source.append("    private ").append(className).append("() {\n    }\n\n");
+        source.append("    public static double eval(");
+        for (int i = 0; i < parameters.length; i++) {
+            source.append(i == 0 ? "" : ", ").append("double ").append(parameters[i]);
+        }
+        source.append(") {\n").append(generator.body);
+        source.append("        return ").append(result).append(";\n    }\n\n}\n");
+        return source.toString();
+    }
+
+    /**
+     * Whether the variable name can be a parameter without clashing with a keyword, the locals,
+     * the generated names of other parameters or the classes the method uses.
+     */
+    private static boolean isParameterName(String name) {
+        return SourceVersion.isIdentifier(name) && !SourceVersion.isKeyword(name) && !name.matches("[tp][0-9]+") &&
+                !name.equals("Math") && !name.equals("Double");
+    }
+
+    private static void collectVariableNames(BaseNode node, Set<String> names) {
+        if (node instanceof VariableNode variableNode) {
+            String name = variableNode.getVariableName();
+            if (!name.equals("e") && !name.equals("pi")) {
+                names.add(name);
+            }
+        } else if (node instanceof FunctionNode functionNode) {
+            for (BaseNode argument : functionNode.getArguments()) {
+                collectVariableNames(argument, names);
+            }
+        }
+    }
+
+    /**
+     * Emit the statements for the node and return the Java expression of its value.
+     */
+    private String emit(BaseNode node) {
+        if (node instanceof NumberNode numberNode) {
+            return literal(numberNode.getNumber());
+        } else if (node instanceof SlotNode slotNode) {
+            return parameters[slotNode.getSlot()];
+        }
+        if (!(node instanceof FunctionNode functionNode)) {
+            throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+        }
+        String local = locals.get(node);
+        if (local != null) {
+            return local;
+        }
+        if (functionNode.getType() == FunctionNode.Type.IF &&
+                !IfNode.isSelect(functionNode.getArguments().get(1), functionNode.getArguments().get(2))) {
+            return emitBranch(functionNode);
+        }
+        List<String> arguments = new ArrayList<>(functionNode.getArguments().size());
+        for (BaseNode argument : functionNode.getArguments()) {
+            arguments.add(emit(argument));
+        }
+        String a = arguments.get(0);
+        String b = arguments.size() > 1 ? arguments.get(1) : null;
+        String value = switch (functionNode.getType()) {
+            case ADD -> a + " + " + b;
+            case MINUS -> a + " - " + b;
+            case MULTIPY -> a + " * " + b;
+            case DIVIDE -> a + " / " + b;
+            case POW -> "Math.pow(" + a + ", " + b + ")";
+            case SIN -> "Math.sin(" + a + ")";
+            case COS -> "Math.cos(" + a + ")";
+            case TAN -> "Math.tan(" + a + ")";
+            case ASIN -> "Math.asin(" + a + ")";
+            case ACOS -> "Math.acos(" + a + ")";
+            case ATAN -> "Math.atan(" + a + ")";
+            case SQRT -> "Math.sqrt(" + a + ")";
+            case EXP -> "Math.exp(" + a + ")";
+            case LOG -> "Math.log(" + a + ") / Math.log(" + b + ")";
+            case NEGATE -> "-" + a;
+            case LN -> "Math.log(" + a + ")";
+            case LESS -> a + " < " + b + " ? 1.0 : 0.0";
+            case LESS_EQUAL -> a + " <= " + b + " ? 1.0 : 0.0";
+            case GREATER -> a + " > " + b + " ? 1.0 : 0.0";
+            case GREATER_EQUAL -> a + " >= " + b + " ? 1.0 : 0.0";
+            case EQUAL -> a + " == " + b + " ? 1.0 : 0.0";
+            case NOT_EQUAL -> a + " != " + b + " ? 1.0 : 0.0";
+            case IF -> a + " != 0 ? " + b + " : " + arguments.get(2);
+            case MIN -> "Math.min(" + a + ", " + b + ")";
+            case MAX -> "Math.max(" + a + ", " + b + ")";
+            case ABS -> "Math.abs(" + a + ")";
+            case SQUARE -> a + " * " + a;
+            case CLAMP -> "Math.min(Math.max(" + a + ", " + b + "), " + arguments.get(2) + ")";
+        };
+        local = "t" + localCount++;
+        locals.put(node, local);
+        body.append(indent).append("double ").append(local).append(" = ").append(value).append(";\n");
+        return local;
+    }
+
+    /**
+     * Emit an if statement that assigns the value of the branch that is taken to a new local.
+     */
+    private String emitBranch(FunctionNode node) {
+        String condition = emit(node.getArguments().get(0));
+        String local = "t" + localCount++;
+        body.append(indent).append("double ").append(local).append(";\n");
+        body.append(indent).append("if (").append(condition).append(" != 0) {\n");
+        emitBranchValue(local, node.getArguments().get(1));
+        body.append(indent).append("} else {\n");
+        emitBranchValue(local, node.getArguments().get(2));
+        body.append(indent).append("}\n");
+        locals.put(node, local);
+        return local;
+    }
+
+    /**
+     * Emit the statements of a branch, whose locals are out of scope after it and so are not reused.
+     */
+    private void emitBranchValue(String local, BaseNode branch) {
+        Map<BaseNode, String> outerLocals = locals;
+        String outerIndent = indent;
+        locals = new IdentityHashMap<>(outerLocals);
+        indent = outerIndent + "    ";
+        String value = emit(branch);
+        body.append(indent).append(local).append(" = ").append(value).append(";\n");
+        locals = outerLocals;
+        indent = outerIndent;
+    }
+
+    /**
+     * Get a Java expression of exactly the number. Negative numbers are in brackets so they can follow any operator.
+     */
+    private static String literal(double number) {
+        if (Double.isNaN(number)) {
+            return "Double.NaN";
+        } else if (Double.isInfinite(number)) {
+            return number > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+        String string = Double.toString(number);
+        return string.startsWith("-") ? "(" + string + ")" : string;
+    }
+
+    private static String stringLiteral(String string) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char character = string.charAt(i);
+            switch (character) {
+                case '"' -> result.append("\\\"");
+                case '\\' -> result.append("\\\\");
+                default -> {
+                    if (character < 0x20 || character > 0x7e) {
+                        result.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        result.append(character);
+                    }
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+}
@@ -0,0 +1,401 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.compact;
+
+import yancey.expression.ast.Expression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.BinaryNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.UnaryNode;
+import yancey.expression.ast.node.VariableNode;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores many expressions in a few primitive arrays instead of a tree of objects per expression.
+ * <p>
+ * Every expression is appended to one byte array as postfix instructions of one byte each.
+ * {@code CONST} is followed by the varint index of a constant in a pool shared by all expressions of the store,
+ * and {@code LOAD} by the varint id of a variable in a {@link VariableTable}. {@code DUP} duplicates the top of
+ * the stack, so a square stores its operand once. {@code if} is stored as {@code SELECT} of the condition and both
+ * branches, so the code has no jumps and both branches are calculated. Variable names are resolved when an expression
+ * is added, the same way {@link Expression#bind(List)} does with the variable names passed along with it, so the meaning
+ * of a name like {@code ab} never depends on the other expressions of the table. The resolved names are interned.
+ * <p>
+ * Adding is synchronized, and expressions can be calculated by any number of threads while others are added.
+ */
+public class CompactStore {
+
+    public static final int CONST = 0;
+    public static final int LOAD = 1;
+    public static final int DUP = 2;
+    public static final int ADD = 3;
+    public static final int MINUS = 4;
+    public static final int MULTIPLY = 5;
+    public static final int DIVIDE = 6;
+    public static final int POW = 7;
+    public static final int SIN = 8;
+    public static final int COS = 9;
+    public static final int TAN = 10;
+    public static final int ASIN = 11;
+    public static final int ACOS = 12;
+    public static final int ATAN = 13;
+    public static final int SQRT = 14;
+    public static final int EXP = 15;
+    public static final int LOG = 16;
+    public static final int NEGATE = 17;
+    public static final int LN = 18;
+    public static final int LESS = 19;
+    public static final int LESS_EQUAL = 20;
+    public static final int GREATER = 21;
+    public static final int GREATER_EQUAL = 22;
+    public static final int EQUAL = 23;
+    public static final int NOT_EQUAL = 24;
+    public static final int SELECT = 25;
+    public static final int MIN = 26;
+    public static final int MAX = 27;
+    public static final int ABS = 28;
+    public static final int CLAMP = 29;
+
+    private final VariableTable variableTable;
+    // open addressing from the bits of a constant to its index + 1, 0 marks an empty entry, at most half full
+    private int[] constantTable = new int[32];
+    private byte[] code = new byte[256];
+    private int codeLength;
+    private int[] offsets = new int[17];
+    private double[] constants = new double[16];
+    private int constantCount;
+    private int maxStack;
+    private volatile int size;
+
+    public CompactStore() {
+        this(VariableTable.GLOBAL);
+    }
+
+    public CompactStore(VariableTable variableTable) {
+        this.variableTable = variableTable;
+    }
+
+    public VariableTable getVariableTable() {
+        return variableTable;
+    }
+
+    /**
+     * Add the expression, whose variables are resolved against variableNames, and return its index in the store.
+     *
+     * @throws RuntimeException if a variable of the expression can not be resolved
+     */
+    public synchronized int add(Expression expression, List<String> variableNames) {
+        int start = codeLength;
+        int stack;
+        try {
+            stack = emit(expression.getRoot(), Set.copyOf(variableNames));
+        } catch (RuntimeException e) {
+            codeLength = start;
+            throw e;
+        }
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[size + 1] = codeLength;
+        maxStack = Math.max(maxStack, stack);
+        // publishes the arrays written above to readers that read the size first
+        size++;
+        return size - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public double[] newStack() {
+        return new double[maxStack];
+    }
+
+    public double calculate(int index, double[] values) {
+        return calculate(index, values, newStack());
+    }
+
+    /**
+     * Calculate the expression at the index with the values of the variables of the table, indexed by id,
+     * and a stack of at least {@link #getMaxStack()} elements.
+     */
+    public double calculate(int index, double[] values, double[] stack) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("expression " + index + " of " + size);
+        }
+        byte[] code = this.code;
+        double[] constants = this.constants;
+        int pc = offsets[index];
+        int end = offsets[index + 1];
+        // the top of the operand stack is kept in a local, stack[1, sp) holds the values below it
+        double top = 0;
+        int sp = 0;
+        while (pc < end) {
+            int opcode = code[pc++];
+            switch (opcode) {
+                case CONST, LOAD -> {
+                    int operand = code[pc++];
+                    if (operand < 0) {
+                        operand &= 0x7f;
+                        for (int shift = 7; ; shift += 7) {
+                            int b = code[pc++];
+                            operand |= (b & 0x7f) << shift;
+                            if (b >= 0) {
+                                break;
+                            }
+                        }
+                    }
+                    stack[sp++] = top;
+                    top = opcode == CONST ? constants[operand] : values[operand];
+                }
+                case DUP -> stack[sp++] = top;
+                case ADD -> top = stack[--sp] + top;
+                case MINUS -> top = stack[--sp] - top;
+                case MULTIPLY -> top = stack[--sp] * top;
+                case DIVIDE -> top = stack[--sp] / top;
+                case POW -> top = Math.pow(stack[--sp], top);
+                case SIN -> top = Math.sin(top);
+                case COS -> top = Math.cos(top);
+                case TAN -> top = Math.tan(top);
+                case ASIN -> top = Math.asin(top);
+                case ACOS -> top = Math.acos(top);
+                case ATAN -> top = Math.atan(top);
+                case SQRT -> top = Math.sqrt(top);
+                case EXP -> top = Math.exp(top);
+                case LOG -> top = Math.log(stack[--sp]) / Math.log(top);
+                case NEGATE -> top = -top;
+                case LN -> top = Math.log(top);
+                case LESS -> top = stack[--sp] < top ? 1 : 0;
+                case LESS_EQUAL -> top = stack[--sp] <= top ? 1 : 0;
+                case GREATER -> top = stack[--sp] > top ? 1 : 0;
+                case GREATER_EQUAL -> top = stack[--sp] >= top ? 1 : 0;
+                case EQUAL -> top = stack[--sp] == top ? 1 : 0;
+                case NOT_EQUAL -> top = stack[--sp] != top ? 1 : 0;
+                case SELECT -> {
+                    double then = stack[--sp];
+                    top = FunctionNode.isTrue(stack[--sp]) ? then : top;
+                }
+                case MIN -> top = Math.min(stack[--sp], top);
+                case MAX -> top = Math.max(stack[--sp], top);
+                case ABS -> top = Math.abs(top);
+                case CLAMP -> {
+                    double min = stack[--sp];
+                    top = FunctionNode.clamp(stack[--sp], min, top);
+                }
+                default -> throw new RuntimeException("unknown opcode: " + opcode);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Get the number of bytes of the store on a 64-bit JVM with compressed references: the store itself and its arrays
+     * with their 16-byte headers and unused capacity, including the table that deduplicates constants.
+     * The shared {@link VariableTable} is not counted.
+     */
+    public synchronized long getByteSize() {
+        return align(12 + 4 * 5 + 4 * 4) + align(16 + code.length) + align(16 + (long) offsets.length * Integer.BYTES) +
+                align(16 + (long) constants.length * Double.BYTES) + align(16 + (long) constantTable.length * Integer.BYTES);
+    }
+
+    public double getBytesPerExpression() {
+        return size == 0 ? 0 : (double) getByteSize() / size;
+    }
+
+    /**
+     * Estimate the bytes of the object tree of an expression on a 64-bit JVM with compressed references:
+     * 12-byte object headers, 4-byte references, 8-byte alignment, and two-element immutable lists of arguments.
+     * Objects shared within the tree are counted once.
+     */
+    public static long estimateTreeSize(Expression expression) {
+        return align(12 + 4 + 4) + estimateTreeSize(expression.getRoot(), new IdentityHashMap<>());
+    }
+
+    private static long estimateTreeSize(BaseNode node, Map<Object, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) {
+            return 0;
+        }
+        if (node instanceof NumberNode) {
+            return align(12 + 8);
+        } else if (node instanceof VariableNode variableNode) {
+            long result = align(12 + 4);
+            if (visited.put(variableNode.getVariableName(), Boolean.TRUE) == null) {
+                // String with its hash and coder fields, and its latin-1 byte array
+                result += align(12 + 4 + 4 + 1 + 1) + align(16 + variableNode.getVariableName().length());
+            }
+            return result;
+        }
+        if (!(node instanceof FunctionNode functionNode)) {
+            throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+        }
+        long result;
+        if (node instanceof BinaryNode) {
+            result = align(12 + 4 + 4 + 4 + 4);
+        } else if (node instanceof UnaryNode) {
+            result = align(12 + 4 + 4 + 4);
+        } else {
+            result = align(12 + 4 + 4);
+        }
+        result += align(12 + 4 + 4);
+        for (BaseNode argument : functionNode.getArguments()) {
+            result += estimateTreeSize(argument, visited);
+        }
+        return result;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Emit the instructions of the node and return the max stack size needed to evaluate it.
+     */
+    private int emit(BaseNode node, Set<String> variableNames) {
+        if (node instanceof NumberNode numberNode) {
+            emitOperand(CONST, constant(numberNode.getNumber()));
+            return 1;
+        } else if (node instanceof VariableNode variableNode) {
+            return emitVariable(variableNode.getVariableName(), variableNames);
+        } else if (node instanceof FunctionNode functionNode && functionNode.getType() == FunctionNode.Type.SQUARE) {
+            int stack = emit(functionNode.getArguments().get(0), variableNames);
+            emit(DUP);
+            emit(MULTIPLY);
+            return Math.max(stack, 2);
+        } else if (node instanceof FunctionNode functionNode) {
+            int maxStack = 0;
+            for (int i = 0; i < functionNode.getArguments().size(); i++) {
+                maxStack = Math.max(maxStack, i + emit(functionNode.getArguments().get(i), variableNames));
+            }
+            emit(switch (functionNode.getType()) {
+                case ADD -> ADD;
+                case MINUS -> MINUS;
+                case MULTIPY -> MULTIPLY;
+                case DIVIDE -> DIVIDE;
+                case POW -> POW;
+                case SIN -> SIN;
+                case COS -> COS;
+                case TAN -> TAN;
+                case ASIN -> ASIN;
+                case ACOS -> ACOS;
+                case ATAN -> ATAN;
+                case SQRT -> SQRT;
+                case EXP -> EXP;
+                case LOG -> LOG;
+                case NEGATE -> NEGATE;
+                case LN -> LN;
+                case LESS -> LESS;
+                case LESS_EQUAL -> LESS_EQUAL;
+                case GREATER -> GREATER;
+                case GREATER_EQUAL -> GREATER_EQUAL;
+                case EQUAL -> EQUAL;
+                case NOT_EQUAL -> NOT_EQUAL;
+                case IF -> SELECT;
+                case MIN -> MIN;
+                case MAX -> MAX;
+                case ABS -> ABS;
+                case CLAMP -> CLAMP;
+                case SQUARE -> throw new RuntimeException("square is emitted as dup and multiply");
+            });
+            return maxStack;
+        }
+        throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+    }
+
+    /**
+     * Emit a variable the way {@link VariableNode#bind(Map)} resolves it: one of the variable names,
+     * then the constants e and pi, then a product of variables of one character each.
+     */
+    private int emitVariable(String name, Set<String> variableNames) {
+        if (variableNames.contains(name)) {
+            emitOperand(LOAD, variableTable.intern(name));
+            return 1;
+        } else if (name.equals("e") || name.equals("pi")) {
+            emitOperand(CONST, constant(name.equals("e") ? Math.E : Math.PI));
+            return 1;
+        }
+        boolean product = name.length() > 1;
+        for (int i = 0; i < name.length() && product; i++) {
+            product = name.charAt(i) == 'e' || variableNames.contains(String.valueOf(name.charAt(i)));
+        }
+        if (!product) {
+            throw new RuntimeException("unknown variable name: " + name);
+        }
+        for (int i = 0; i < name.length(); i++) {
+            emitVariable(String.valueOf(name.charAt(i)), variableNames);
+            if (i > 0) {
+                emit(MULTIPLY);
+            }
+        }
+        return 2;
+    }
+
+    private int constant(double number) {
+        long bits = Double.doubleToRawLongBits(number);
+        int mask = constantTable.length - 1;
+        int slot = hash(bits) & mask;
+        for (; constantTable[slot] != 0; slot = (slot + 1) & mask) {
+            if (Double.doubleToRawLongBits(constants[constantTable[slot] - 1]) == bits) {
+                return constantTable[slot] - 1;
+            }
+        }
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = number;
+        constantTable[slot] = ++constantCount;
+        if (constantCount * 2 > constantTable.length) {
+            rehash();
+        }
+        return constantCount - 1;
+    }
+
+    private void rehash() {
+        int[] table = new int[constantTable.length * 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < constantCount; i++) {
+            int slot = hash(Double.doubleToRawLongBits(constants[i])) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        constantTable = table;
+    }
+
+    private static int hash(long bits) {
+        bits *= 0x9E3779B97F4A7C15L;
+        return (int) (bits ^ bits >>> 32);
+    }
+
+    private void emitOperand(int opcode, int operand) {
+        emit(opcode);
+        while ((operand & ~0x7f) != 0) {
+            emit((operand & 0x7f) | 0x80);
+            operand >>>= 7;
+        }
+        emit(operand);
+    }
+
+    private void emit(int value) {
+        if (codeLength == code.length) {
+            code = Arrays.copyOf(code, codeLength * 2);
+        }
+        code[codeLength++] = (byte) value;
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.compact;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns variable names as dense ids, so that many expressions refer to a variable by the same small number.
+ * Values of the variables are passed as an array indexed by id. A table is thread-safe and only grows.
+ */
+public class VariableTable {
+
+    public static final VariableTable GLOBAL = new VariableTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile int size;
+
+    /**
+     * Get the id of the name, adding it if it is new.
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    private synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        String[] names = this.names;
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = name;
+        this.names = names;
+        ids.put(name, size);
+        return size++;
+    }
+
+    /**
+     * Get the id of the name, or -1 if it was never interned.
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new RuntimeException("unknown variable id: " + id);
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Create an array of values with a slot for every variable interned so far.
+     */
+    public double[] newValues() {
+        return new double[size];
+    }
+
+}
@@ -0,0 +1,18 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.compiler;
+
+/**
+ * An expression evaluated by generated code.
+ * The layout of {@code values} is the variable layout of the bound expression it was compiled from.
+ */
+public interface CompiledExpression {
+
+    double eval(double[] values);
+
+}
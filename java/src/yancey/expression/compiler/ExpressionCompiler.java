@@ -0,0 +1,556 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.compiler;
+
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.IfNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.SlotNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles a bound expression into a hidden class with a single straight-line {@code eval} method,
+ * so the JIT sees the whole expression as one method instead of a tree of virtual calls.
+ * <p>
+ * Comparisons and {@code if} are the only branches. An {@code if} with cheap branches, see
+ * {@link IfNode#isSelect(BaseNode, BaseNode)}, calculates both of them and then only picks one, a diamond
+ * the JIT can turn into a conditional move. Any other {@code if} jumps over the branch that is not taken.
+ */
+public class ExpressionCompiler {
+
+    private static final String CLASS_NAME = "yancey/expression/compiler/GeneratedExpression";
+    private static final String INTERFACE_NAME = "yancey/expression/compiler/CompiledExpression";
+    private static final int MAX_CODE_LENGTH = 65535;
+    // emit recurses once per level, deeper trees are interpreted, their code would be too large for the JIT anyway
+    private static final int MAX_HEIGHT = 1024;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int MAX_JUMP_CODE_LENGTH = Short.MAX_VALUE;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DNEG = 0x77;
+    private static final int POP2 = 0x58;
+    private static final int DUP2 = 0x5c;
+    private static final int DUP2_X2 = 0x5e;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int GOTO = 0xa7;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private static final int FULL_FRAME = 255;
+    private static final int ITEM_DOUBLE = 3;
+    private static final int ITEM_OBJECT = 7;
+
+    private final ConstantPool constantPool = new ConstantPool();
+    private final CodeBuffer code = new CodeBuffer();
+    // the number of doubles on the operand stack below the node being emitted, and at every jump target
+    private final Map<Integer, Integer> frames = new TreeMap<>();
+    private int depth;
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Compile the expression, falling back to the interpreter when the expression is too large or too deep for one method.
+     */
+    public static CompiledExpression compile(BoundExpression expression) {
+        if (height(expression.getRoot()) > MAX_HEIGHT) {
+            return expression::calculate;
+        }
+        byte[] classFile = new ExpressionCompiler().generate(expression.getRoot());
+        if (classFile == null) {
+            return expression::calculate;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return (CompiledExpression) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable throwable) {
+            throw new RuntimeException("fail to define compiled expression", throwable);
+        }
+    }
+
+    /**
+     * Get the number of levels of the tree, walking it with an explicit stack.
+     */
+    private static int height(BaseNode root) {
+        int height = 0;
+        ArrayDeque<BaseNode> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> levels = new ArrayDeque<>();
+        nodes.push(root);
+        levels.push(1);
+        while (!nodes.isEmpty()) {
+            BaseNode node = nodes.pop();
+            int level = levels.pop();
+            height = Math.max(height, level);
+            if (node instanceof FunctionNode functionNode) {
+                for (BaseNode argument : functionNode.getArguments()) {
+                    nodes.push(argument);
+                    levels.push(level + 1);
+                }
+            }
+        }
+        return height;
+    }
+
+    private byte[] generate(BaseNode root) {
+        int thisClass = constantPool.classInfo(CLASS_NAME);
+        int superClass = constantPool.classInfo("java/lang/Object");
+        int interfaceClass = constantPool.classInfo(INTERFACE_NAME);
+        int objectInit = constantPool.methodRef("java/lang/Object", "<init>", "()V");
+        int initName = constantPool.utf8("<init>");
+        int initDescriptor = constantPool.utf8("()V");
+        int evalName = constantPool.utf8("eval");
+        int evalDescriptor = constantPool.utf8("([D)D");
+        int codeName = constantPool.utf8("Code");
+
+        int maxStack = emit(root);
+        code.write(DRETURN);
+        byte[] stackMapTable = frames.isEmpty() ? null : stackMapTable(thisClass, constantPool.classInfo("[D"));
+        int stackMapTableName = frames.isEmpty() ? 0 : constantPool.utf8("StackMapTable");
+        if (code.size() > (frames.isEmpty() ? MAX_CODE_LENGTH : MAX_JUMP_CODE_LENGTH) ||
+                maxStack > 0xffff || constantPool.size() > 0xffff) {
+            return null;
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(byteArrayOutputStream)) {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(61);
+            constantPool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0);
+            out.writeShort(2);
+            // public <init>() { super(); }
+            writeMethod(out, initName, initDescriptor, codeName, 1, 1, new byte[]{
+                    ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN}, 0, null);
+            // public double eval(double[] values) { return ...; }
+            writeMethod(out, evalName, evalDescriptor, codeName, maxStack, 2, code.toByteArray(), stackMapTableName, stackMapTable);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName, int maxStack, int maxLocals,
+                                    byte[] code, int stackMapTableName, byte[] stackMapTable) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length + (stackMapTable == null ? 0 : 6 + stackMapTable.length));
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        if (stackMapTable == null) {
+            out.writeShort(0);
+        } else {
+            out.writeShort(1);
+            out.writeShort(stackMapTableName);
+            out.writeInt(stackMapTable.length);
+            out.write(stackMapTable);
+        }
+    }
+
+    /**
+     * Write a full frame for every jump target: the locals are this and the values, the stack holds only doubles.
+     */
+    private byte[] stackMapTable(int thisClass, int valuesClass) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(byteArrayOutputStream)) {
+            out.writeShort(frames.size());
+            int previous = -1;
+            for (Map.Entry<Integer, Integer> frame : frames.entrySet()) {
+                out.writeByte(FULL_FRAME);
+                out.writeShort(frame.getKey() - previous - 1);
+                out.writeShort(2);
+                out.writeByte(ITEM_OBJECT);
+                out.writeShort(thisClass);
+                out.writeByte(ITEM_OBJECT);
+                out.writeShort(valuesClass);
+                out.writeShort(frame.getValue());
+                for (int i = 0; i < frame.getValue(); i++) {
+                    out.writeByte(ITEM_DOUBLE);
+                }
+                previous = frame.getKey();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Emit the code of the node and return the max stack size in slots needed to evaluate it.
+     */
+    private int emit(BaseNode node) {
+        if (node instanceof NumberNode numberNode) {
+            emitNumber(numberNode.getNumber());
+            return 2;
+        } else if (node instanceof SlotNode slotNode) {
+            code.write(ALOAD_1);
+            emitInt(slotNode.getSlot());
+            code.write(DALOAD);
+            return 2;
+        } else if (node instanceof FunctionNode functionNode) {
+            List<BaseNode> arguments = functionNode.getArguments();
+            return switch (functionNode.getType()) {
+                case ADD -> emitBinary(arguments, DADD);
+                case MINUS -> emitBinary(arguments, DSUB);
+                case MULTIPY -> emitBinary(arguments, DMUL);
+                case DIVIDE -> emitBinary(arguments, DDIV);
+                case POW -> {
+                    int maxStack = emitArguments(arguments);
+                    emitMath("pow", "(DD)D");
+                    yield maxStack;
+                }
+                case SIN -> emitUnary(arguments, "sin");
+                case COS -> emitUnary(arguments, "cos");
+                case TAN -> emitUnary(arguments, "tan");
+                case ASIN -> emitUnary(arguments, "asin");
+                case ACOS -> emitUnary(arguments, "acos");
+                case ATAN -> emitUnary(arguments, "atan");
+                case SQRT -> emitUnary(arguments, "sqrt");
+                case EXP -> emitUnary(arguments, "exp");
+                case LOG -> {
+                    int maxStack = emitUnary(arguments.subList(0, 1), "log");
+                    depth++;
+                    maxStack = Math.max(maxStack, 2 + emitUnary(arguments.subList(1, 2), "log"));
+                    depth--;
+                    code.write(DDIV);
+                    yield maxStack;
+                }
+                case NEGATE -> {
+                    int maxStack = emit(arguments.get(0));
+                    code.write(DNEG);
+                    yield maxStack;
+                }
+                case LN -> emitUnary(arguments, "log");
+                case LESS -> emitComparison(arguments, DCMPG, IFGE);
+                case LESS_EQUAL -> emitComparison(arguments, DCMPG, IFGT);
+                case GREATER -> emitComparison(arguments, DCMPL, IFLE);
+                case GREATER_EQUAL -> emitComparison(arguments, DCMPL, IFLT);
+                case EQUAL -> emitComparison(arguments, DCMPL, IFNE);
+                case NOT_EQUAL -> emitComparison(arguments, DCMPL, IFEQ);
+                case IF -> IfNode.isSelect(arguments.get(1), arguments.get(2)) ? emitSelect(arguments) : emitBranch(arguments);
+                case MIN -> {
+                    int maxStack = emitArguments(arguments);
+                    emitMath("min", "(DD)D");
+                    yield maxStack;
+                }
+                case MAX -> {
+                    int maxStack = emitArguments(arguments);
+                    emitMath("max", "(DD)D");
+                    yield maxStack;
+                }
+                case ABS -> emitUnary(arguments, "abs");
+                case SQUARE -> {
+                    int maxStack = Math.max(emit(arguments.get(0)), 4);
+                    code.write(DUP2);
+                    code.write(DMUL);
+                    yield maxStack;
+                }
+                case CLAMP -> {
+                    int maxStack = emitArguments(arguments.subList(0, 2));
+                    emitMath("max", "(DD)D");
+                    depth++;
+                    maxStack = Math.max(maxStack, 2 + emit(arguments.get(2)));
+                    depth--;
+                    emitMath("min", "(DD)D");
+                    yield maxStack;
+                }
+            };
+        }
+        throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+    }
+
+    private int emitBinary(List<BaseNode> arguments, int opcode) {
+        int maxStack = emitArguments(arguments);
+        code.write(opcode);
+        return maxStack;
+    }
+
+    /**
+     * Emit the arguments one above the other.
+     */
+    private int emitArguments(List<BaseNode> arguments) {
+        int maxStack = 0;
+        for (int i = 0; i < arguments.size(); i++) {
+            maxStack = Math.max(maxStack, 2 * i + emit(arguments.get(i)));
+            depth++;
+        }
+        depth -= arguments.size();
+        return maxStack;
+    }
+
+    /**
+     * Emit {@code a compare b ? 1 : 0}, where jump skips the 1 when the comparison of the two does not hold.
+     * compare is the one of dcmpl and dcmpg that makes NaN fail it.
+     */
+    private int emitComparison(List<BaseNode> arguments, int compare, int jump) {
+        int maxStack = emitArguments(arguments);
+        code.write(compare);
+        int otherwise = emitJump(jump);
+        code.write(DCONST_1);
+        int end = emitJump(GOTO);
+        bind(otherwise, depth);
+        code.write(DCONST_0);
+        bind(end, depth + 1);
+        return maxStack;
+    }
+
+    /**
+     * Emit the then and otherwise branches unconditionally, then the condition, and keep one of the branches.
+     */
+    private int emitSelect(List<BaseNode> arguments) {
+        int maxStack = emitArguments(arguments.subList(1, 3));
+        depth += 2;
+        maxStack = Math.max(maxStack, 4 + emitCondition(arguments.get(0)));
+        depth -= 2;
+        int otherwise = emitJump(IFEQ);
+        code.write(POP2);
+        int end = emitJump(GOTO);
+        bind(otherwise, depth + 2);
+        // then otherwise -> otherwise then otherwise -> otherwise
+        code.write(DUP2_X2);
+        code.write(POP2);
+        code.write(POP2);
+        bind(end, depth + 1);
+        return Math.max(maxStack, 6);
+    }
+
+    /**
+     * Emit the condition and jump over the branch that is not taken.
+     */
+    private int emitBranch(List<BaseNode> arguments) {
+        int maxStack = emitCondition(arguments.get(0));
+        int otherwise = emitJump(IFEQ);
+        maxStack = Math.max(maxStack, emit(arguments.get(1)));
+        int end = emitJump(GOTO);
+        bind(otherwise, depth);
+        maxStack = Math.max(maxStack, emit(arguments.get(2)));
+        bind(end, depth + 1);
+        return maxStack;
+    }
+
+    /**
+     * Emit the condition as an int that is 0 if it is false, NaN is true.
+     */
+    private int emitCondition(BaseNode condition) {
+        int maxStack = Math.max(emit(condition), 4);
+        code.write(DCONST_0);
+        code.write(DCMPL);
+        return maxStack;
+    }
+
+    private int emitJump(int opcode) {
+        int position = code.size();
+        code.write(opcode);
+        emitShort(0);
+        return position;
+    }
+
+    /**
+     * Point the jump at the next instruction, where the stack holds stackDepth doubles.
+     */
+    private void bind(int jump, int stackDepth) {
+        code.patchShort(jump + 1, code.size() - jump);
+        frames.put(code.size(), stackDepth);
+    }
+
+    private int emitUnary(List<BaseNode> arguments, String method) {
+        int maxStack = emit(arguments.get(0));
+        emitMath(method, "(D)D");
+        return maxStack;
+    }
+
+    private void emitMath(String method, String descriptor) {
+        int methodRef = constantPool.methodRef("java/lang/Math", method, descriptor);
+        code.write(INVOKESTATIC);
+        emitShort(methodRef);
+    }
+
+    private void emitNumber(double number) {
+        long bits = Double.doubleToRawLongBits(number);
+        if (bits == 0L) {
+            code.write(DCONST_0);
+        } else if (bits == Double.doubleToRawLongBits(1.0)) {
+            code.write(DCONST_1);
+        } else {
+            code.write(LDC2_W);
+            emitShort(constantPool.doubleInfo(number));
+        }
+    }
+
+    private void emitInt(int value) {
+        if (value >= 0 && value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else if (value <= Short.MAX_VALUE) {
+            code.write(SIPUSH);
+            emitShort(value);
+        } else {
+            code.write(LDC_W);
+            emitShort(constantPool.integerInfo(value));
+        }
+    }
+
+    private void emitShort(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private static class CodeBuffer extends ByteArrayOutputStream {
+
+        void patchShort(int position, int value) {
+            buf[position] = (byte) (value >> 8);
+            buf[position + 1] = (byte) value;
+        }
+
+    }
+
+    private static class ConstantPool {
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_METHOD_REF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private int size = 1;
+
+        int utf8(String string) {
+            return add("utf8:" + string, 1, () -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(string);
+            });
+        }
+
+        int integerInfo(int value) {
+            return add(value, 1, () -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        int doubleInfo(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            return add(bits, 2, () -> {
+                out.writeByte(CONSTANT_DOUBLE);
+                out.writeLong(bits);
+            });
+        }
+
+        int classInfo(String name) {
+            int nameIndex = utf8(name);
+            return add("class:" + name, 1, () -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int classIndex = classInfo(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndTypeIndex = add("nameAndType:" + name + descriptor, 1, () -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return add("method:" + owner + "." + name + descriptor, 1, () -> {
+                out.writeByte(CONSTANT_METHOD_REF);
+                out.writeShort(classIndex);
+                out.writeShort(nameAndTypeIndex);
+            });
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(DataOutputStream dataOutputStream) throws IOException {
+            dataOutputStream.writeShort(size);
+            byteArrayOutputStream.writeTo(dataOutputStream);
+        }
+
+        private int add(Object key, int slots, Entry entry) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = size;
+            size += slots;
+            indexes.put(key, index);
+            return index;
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.csv;
+
+import yancey.expression.ast.Expression;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Evaluate a formula for every row of a CSV file:
+ * <pre>
+ * java yancey.expression.csv.CsvCli [-d delimiter] [-n result name] [-o output.csv] formula input.csv
+ * </pre>
+ * The input is read from stdin if it is {@code -}, and the results are written to stdout without {@code -o}.
+ * The number of rows and the throughput are reported on stderr.
+ */
+public class CsvCli {
+
+    public static void main(String[] args) throws IOException {
+        char delimiter = ',';
+        String resultName = "result";
+        String output = null;
+        int i = 0;
+        for (; i < args.length - 2; i += 2) {
+            switch (args[i]) {
+                case "-d" -> {
+                    if (args[i + 1].length() != 1) {
+                        usage("delimiter must be one character");
+                    }
+                    delimiter = args[i + 1].charAt(0);
+                }
+                case "-n" -> resultName = args[i + 1];
+                case "-o" -> output = args[i + 1];
+                default -> usage("unknown option: " + args[i]);
+            }
+        }
+        if (args.length - i != 2) {
+            usage("require a formula and an input file");
+        }
+        CsvEvaluator csvEvaluator = new CsvEvaluator(new Expression(args[i]), delimiter, resultName, CsvEvaluator.DEFAULT_BUFFER_SIZE);
+        CsvEvaluator.Statistics statistics;
+        try (ReadableByteChannel in = args[i + 1].equals("-") ?
+                Channels.newChannel(System.in) : FileChannel.open(Path.of(args[i + 1]), StandardOpenOption.READ);
+             WritableByteChannel out = output == null ?
+                     Channels.newChannel(new FileOutputStream(FileDescriptor.out)) :
+                     FileChannel.open(Path.of(output), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            statistics = csvEvaluator.evaluate(in, out);
+        }
+        System.err.println(statistics);
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("usage: java yancey.expression.csv.CsvCli [-d delimiter] [-n result name] [-o output.csv] formula input.csv");
+        System.exit(2);
+    }
+
+}
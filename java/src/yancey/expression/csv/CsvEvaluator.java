@@ -0,0 +1,292 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.csv;
+
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.Expression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.SlotNode;
+import yancey.expression.batch.BatchEvaluator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates an expression for every row of a CSV file and writes one result per line.
+ * <p>
+ * The first line is the header, and the expression is bound to its column names. The input is read in chunks
+ * into a fixed buffer, only the columns the expression uses are parsed, straight into primitive columns of one
+ * block of rows, and each block is evaluated by a {@link BatchEvaluator} and written to a fixed output buffer.
+ * So memory use does not depend on the size of the input, except that a line must fit in the input buffer.
+ * <p>
+ * Fields are separated by the delimiter and may be surrounded by spaces and double quotes, but quoted fields
+ * can not contain the delimiter. Empty fields are NaN. An evaluator is not thread-safe.
+ */
+public class CsvEvaluator {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final Expression expression;
+    private final byte delimiter;
+    private final byte[] header;
+    private final byte[] input;
+    private final byte[] output;
+    private final StringBuilder number = new StringBuilder(32);
+    private int outputSize;
+
+    public CsvEvaluator(Expression expression) {
+        this(expression, ',', "result", DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvEvaluator(Expression expression, char delimiter, String resultName, int bufferSize) {
+        if (delimiter > 0x7f) {
+            throw new RuntimeException("delimiter must be an ascii character");
+        }
+        this.expression = expression;
+        this.delimiter = (byte) delimiter;
+        this.header = (resultName + "\n").getBytes(StandardCharsets.UTF_8);
+        this.input = new byte[bufferSize];
+        this.output = new byte[Math.max(bufferSize / 4, 64)];
+    }
+
+    public record Statistics(long rows, long nanos) {
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return rows + " rows in " + nanos / 1_000_000 + " ms (" + Math.round(rowsPerSecond()) + " rows/s)";
+        }
+
+    }
+
+    public Statistics evaluate(Path inputPath, Path outputPath) throws IOException {
+        try (FileChannel in = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outputPath, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return evaluate(in, out);
+        }
+    }
+
+    public Statistics evaluate(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        long start = System.nanoTime();
+        outputSize = 0;
+        Block block = null;
+        int position = 0;
+        int limit = 0;
+        boolean end = false;
+        while (true) {
+            int lineEnd = indexOf(input, position, limit);
+            if (lineEnd < 0) {
+                if (end) {
+                    if (position == limit) {
+                        break;
+                    }
+                    lineEnd = limit;
+                } else {
+                    System.arraycopy(input, position, input, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                    if (limit == input.length) {
+                        throw new RuntimeException("line is longer than " + input.length + " bytes");
+                    }
+                    int read = in.read(ByteBuffer.wrap(input, limit, input.length - limit));
+                    if (read < 0) {
+                        end = true;
+                    } else {
+                        limit += read;
+                    }
+                    continue;
+                }
+            }
+            int next = Math.min(lineEnd + 1, limit);
+            if (lineEnd > position && input[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > position) {
+                if (block == null) {
+                    block = header(position, lineEnd);
+                    writeFully(out, ByteBuffer.wrap(header));
+                } else {
+                    block.parseRow(position, lineEnd);
+                    if (block.size == BatchEvaluator.BLOCK_SIZE) {
+                        block.flush(out);
+                    }
+                }
+            }
+            position = next;
+        }
+        if (block == null) {
+            throw new RuntimeException("no header");
+        }
+        block.flush(out);
+        flush(out);
+        return new Statistics(block.rows, System.nanoTime() - start);
+    }
+
+    private Block header(int from, int to) {
+        List<String> names = new ArrayList<>();
+        int fieldStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || input[i] == delimiter) {
+                int start = trimStart(fieldStart, i);
+                names.add(new String(input, start, trimEnd(start, i) - start, StandardCharsets.UTF_8));
+                fieldStart = i + 1;
+            }
+        }
+        BoundExpression boundExpression = expression.bind(names);
+        boolean[] used = new boolean[names.size()];
+        markSlots(boundExpression.getRoot(), used);
+        return new Block(new BatchEvaluator(boundExpression), names, used);
+    }
+
+    private static void markSlots(BaseNode node, boolean[] used) {
+        if (node instanceof SlotNode slotNode) {
+            used[slotNode.getSlot()] = true;
+        } else if (node instanceof FunctionNode functionNode) {
+            for (BaseNode argument : functionNode.getArguments()) {
+                markSlots(argument, used);
+            }
+        }
+    }
+
+    private class Block {
+
+        private final BatchEvaluator batchEvaluator;
+        private final List<String> names;
+        private final double[][] columns;
+        private final boolean[] used;
+        private final int lastUsed;
+        private final double[] results = new double[BatchEvaluator.BLOCK_SIZE];
+        private int size;
+        private long rows;
+
+        private Block(BatchEvaluator batchEvaluator, List<String> names, boolean[] used) {
+            this.batchEvaluator = batchEvaluator;
+            this.names = names;
+            this.used = used;
+            this.columns = new double[used.length][];
+            double[] unused = new double[BatchEvaluator.BLOCK_SIZE];
+            int lastUsed = -1;
+            for (int i = 0; i < used.length; i++) {
+                columns[i] = used[i] ? new double[BatchEvaluator.BLOCK_SIZE] : unused;
+                if (used[i]) {
+                    lastUsed = i;
+                }
+            }
+            this.lastUsed = lastUsed;
+        }
+
+        private void parseRow(int from, int to) {
+            int field = 0;
+            int fieldStart = from;
+            for (int i = from; field <= lastUsed; i++) {
+                if (i == to || input[i] == delimiter) {
+                    if (used[field]) {
+                        columns[field][size] = parseField(fieldStart, i, field);
+                    }
+                    field++;
+                    fieldStart = i + 1;
+                    if (i == to) {
+                        break;
+                    }
+                }
+            }
+            if (field <= lastUsed) {
+                throw new RuntimeException("row " + (rows + size + 1) + " has no column " + names.get(lastUsed));
+            }
+            size++;
+        }
+
+        private double parseField(int from, int to, int field) {
+            int start = trimStart(from, to);
+            int end = trimEnd(start, to);
+            if (start == end) {
+                return Double.NaN;
+            }
+            try {
+                return DoubleParser.parse(input, start, end);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("invalid number in row " + (rows + size + 1) + ", column " + names.get(field) + ": " +
+                        new String(input, start, end - start, StandardCharsets.UTF_8));
+            }
+        }
+
+        private void flush(WritableByteChannel out) throws IOException {
+            batchEvaluator.calculate(columns, results, 0, size);
+            for (int i = 0; i < size; i++) {
+                number.setLength(0);
+                number.append(results[i]);
+                write(number);
+                writeNewLine(out);
+            }
+            rows += size;
+            size = 0;
+        }
+
+    }
+
+    private int trimStart(int from, int to) {
+        while (from < to && (input[from] == ' ' || input[from] == '"')) {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && (input[to - 1] == ' ' || input[to - 1] == '"')) {
+            to--;
+        }
+        return to;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void write(CharSequence string) {
+        for (int i = 0; i < string.length(); i++) {
+            output[outputSize++] = (byte) string.charAt(i);
+        }
+    }
+
+    private void writeNewLine(WritableByteChannel out) throws IOException {
+        output[outputSize++] = '\n';
+        if (output.length - outputSize < 64) {
+            flush(out);
+        }
+    }
+
+    private void flush(WritableByteChannel out) throws IOException {
+        writeFully(out, ByteBuffer.wrap(output, 0, outputSize));
+        outputSize = 0;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.csv;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses decimal numbers straight from bytes.
+ * <p>
+ * A number {@code m * 10^e} with {@code m <= 2^53} and {@code |e| <= 22} takes Clinger's fast path: both factors
+ * are exact doubles, so one multiplication or division gives the correctly rounded result.
+ * Other numbers with at most 19 significant digits, such as the 17 digits of {@link Double#toString(double)},
+ * use the Eisel-Lemire algorithm, which multiplies by a 128-bit approximation of {@code 5^e}.
+ * Neither allocates. Everything else, including NaN, Infinity, subnormals and the rare cases where
+ * the approximation is not precise enough, falls back to {@link Double#parseDouble(String)},
+ * so results always equal it.
+ */
+public final class DoubleParser {
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int SMALLEST_POWER_OF_TEN = -342;
+    private static final int LARGEST_POWER_OF_TEN = 308;
+    /**
+     * The high and low 64 bits of {@code 5^q} for q in [-342, 308], normalized so that the highest bit is set,
+     * truncated for positive q and rounded up for negative q.
+     */
+    private static final long[] POWERS_OF_FIVE = new long[(LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1) * 2];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+            BigInteger value;
+            if (q < 0) {
+                BigInteger power = BigInteger.valueOf(5).pow(-q);
+                int z = power.subtract(BigInteger.ONE).bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+            } else {
+                value = BigInteger.valueOf(5).pow(q);
+            }
+            value = value.bitLength() > 128 ? value.shiftRight(value.bitLength() - 128) : value.shiftLeft(128 - value.bitLength());
+            int index = (q - SMALLEST_POWER_OF_TEN) * 2;
+            POWERS_OF_FIVE[index] = value.shiftRight(64).longValue();
+            POWERS_OF_FIVE[index + 1] = value.and(mask).longValue();
+        }
+    }
+
+    private DoubleParser() {
+    }
+
+    /**
+     * Parse the bytes in [start, end) as an ASCII number.
+     *
+     * @throws NumberFormatException if the bytes are not a number
+     */
+    public static double parse(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean truncated = false;
+        for (; i < end && isDigit(bytes[i]); i++) {
+            hasDigits = true;
+            if (significantDigits < 19) {
+                // 19 digits may not fit in a signed long, so the mantissa is unsigned
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            } else {
+                truncated = true;
+                exponent++;
+            }
+        }
+        if (i < end && bytes[i] == '.') {
+            for (i++; i < end && isDigit(bytes[i]); i++) {
+                hasDigits = true;
+                if (significantDigits < 19) {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+        if (hasDigits && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int value = 0;
+            for (; i < end && isDigit(bytes[i]); i++) {
+                if (value < 100000) {
+                    value = value * 10 + (bytes[i] - '0');
+                }
+            }
+            if (i == exponentStart) {
+                hasDigits = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (hasDigits && i == end && !truncated) {
+            if (mantissa == 0) {
+                return negative ? -0.0 : 0.0;
+            }
+            if (mantissa >= 0 && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+                double result = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                return negative ? -result : result;
+            }
+            long bits = eiselLemire(mantissa, exponent);
+            if (bits >= 0) {
+                return Double.longBitsToDouble(negative ? bits | Long.MIN_VALUE : bits);
+            }
+        }
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Get the bits of the double nearest to {@code w * 10^q} for an unsigned w other than 0,
+     * or -1 if the result is subnormal or can not be decided cheaply.
+     */
+    private static long eiselLemire(long w, int q) {
+        if (q < SMALLEST_POWER_OF_TEN) {
+            return 0;
+        } else if (q > LARGEST_POWER_OF_TEN) {
+            return Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        }
+        int leadingZeros = Long.numberOfLeadingZeros(w);
+        w <<= leadingZeros;
+        int index = (q - SMALLEST_POWER_OF_TEN) * 2;
+        long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+        long low = w * POWERS_OF_FIVE[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            // the 9 bits below the 55 that decide the rounding are all ones, so add the next 64 bits of 5^q
+            long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) {
+                high++;
+            }
+            if (low == -1 && (q < -27 || q > 55)) {
+                return -1;
+            }
+        }
+        int upperBit = (int) (high >>> 63);
+        long mantissa = high >>> (upperBit + 9);
+        int power2 = (int) (((152170L + 65536) * q) >> 16) + 63 + upperBit - leadingZeros + 1023;
+        if (power2 <= 0) {
+            return -1;
+        }
+        if ((low == 0 || low == 1) && q >= -4 && q <= 23 && (mantissa & 3) == 1 && mantissa << (upperBit + 9) == high) {
+            // exactly halfway between two doubles, so round to even instead of up
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= 1L << 53) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+        if (power2 >= 0x7FF) {
+            return Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        }
+        return mantissa | (long) power2 << 52;
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    private static boolean isDigit(byte character) {
+        return character >= '0' && character <= '9';
+    }
+
+}
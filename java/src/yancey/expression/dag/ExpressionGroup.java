@@ -0,0 +1,236 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.dag;
+
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.Expression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.SlotNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A group of expressions over the same variables compiled into one DAG, in which structurally identical
+ * subtrees of all expressions are shared and calculated once per evaluation.
+ * <p>
+ * Nodes are numbered in topological order, so the arguments of a node always have smaller indexes.
+ * A node is a constant, a variable slot or a function of other nodes.
+ */
+public class ExpressionGroup {
+
+    private final List<String> variableNames;
+    private final FunctionNode.Type[] types;
+    private final double[] numbers;
+    private final int[] slots;
+    private final int[] argumentStarts;
+    private final int[] arguments;
+    private final int[] outputs;
+    private final int treeNodeCount;
+
+    private ExpressionGroup(List<String> variableNames, Builder builder, int[] outputs, int treeNodeCount) {
+        int nodeCount = builder.types.size();
+        this.variableNames = List.copyOf(variableNames);
+        this.types = builder.types.toArray(new FunctionNode.Type[0]);
+        this.numbers = new double[nodeCount];
+        this.slots = new int[nodeCount];
+        this.argumentStarts = new int[nodeCount + 1];
+        List<Integer> arguments = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            NodeKey key = builder.keys.get(i);
+            if (key.type() == null && key.slot() < 0) {
+                numbers[i] = Double.longBitsToDouble(key.bits());
+            }
+            slots[i] = key.slot();
+            argumentStarts[i] = arguments.size();
+            arguments.addAll(key.arguments());
+        }
+        argumentStarts[nodeCount] = arguments.size();
+        this.arguments = arguments.stream().mapToInt(Integer::intValue).toArray();
+        this.outputs = outputs;
+        this.treeNodeCount = treeNodeCount;
+    }
+
+    public static ExpressionGroup compile(List<String> variableNames, Expression... expressions) {
+        return compile(variableNames, Arrays.asList(expressions));
+    }
+
+    public static ExpressionGroup compile(List<String> variableNames, List<Expression> expressions) {
+        Builder builder = new Builder();
+        int[] outputs = new int[expressions.size()];
+        int treeNodeCount = 0;
+        for (int i = 0; i < outputs.length; i++) {
+            BoundExpression boundExpression = expressions.get(i).bind(variableNames);
+            outputs[i] = builder.add(boundExpression.getRoot());
+            treeNodeCount += builder.visitedNodeCount;
+            builder.visitedNodeCount = 0;
+        }
+        return new ExpressionGroup(variableNames, builder, outputs, treeNodeCount);
+    }
+
+    public List<String> getVariableNames() {
+        return variableNames;
+    }
+
+    public int getExpressionCount() {
+        return outputs.length;
+    }
+
+    public int getNodeCount() {
+        return types.length;
+    }
+
+    /**
+     * The number of nodes the bound expressions of the group have in total before sharing.
+     */
+    public int getTreeNodeCount() {
+        return treeNodeCount;
+    }
+
+    /**
+     * The function of the node, or null when the node is a constant or a variable slot.
+     */
+    public FunctionNode.Type getType(int node) {
+        return types[node];
+    }
+
+    public boolean isConstant(int node) {
+        return types[node] == null && slots[node] < 0;
+    }
+
+    public double getNumber(int node) {
+        return numbers[node];
+    }
+
+    /**
+     * The variable slot of the node, or -1 when the node is not a variable slot.
+     */
+    public int getSlot(int node) {
+        return slots[node];
+    }
+
+    public int getArgumentCount(int node) {
+        return argumentStarts[node + 1] - argumentStarts[node];
+    }
+
+    public int getArgument(int node, int index) {
+        return arguments[argumentStarts[node] + index];
+    }
+
+    public int getOutput(int expression) {
+        return outputs[expression];
+    }
+
+    public double[] newNodeValues() {
+        return new double[types.length];
+    }
+
+    public double[] calculate(double[] values) {
+        double[] results = new double[outputs.length];
+        calculate(values, newNodeValues(), results);
+        return results;
+    }
+
+    /**
+     * Calculate every node once into nodeValues and copy the value of each expression to results.
+     */
+    public void calculate(double[] values, double[] nodeValues, double[] results) {
+        for (int i = 0; i < types.length; i++) {
+            nodeValues[i] = calculateNode(i, values, nodeValues);
+        }
+        for (int i = 0; i < outputs.length; i++) {
+            results[i] = nodeValues[outputs[i]];
+        }
+    }
+
+    /**
+     * Calculate one node from the values of its arguments, which must already be in nodeValues.
+     */
+    public double calculateNode(int node, double[] values, double[] nodeValues) {
+        FunctionNode.Type type = types[node];
+        if (type == null) {
+            return slots[node] < 0 ? numbers[node] : values[slots[node]];
+        }
+        int start = argumentStarts[node];
+        double a = nodeValues[arguments[start]];
+        return switch (type) {
+            case ADD -> a + nodeValues[arguments[start + 1]];
+            case MINUS -> a - nodeValues[arguments[start + 1]];
+            case MULTIPY -> a * nodeValues[arguments[start + 1]];
+            case DIVIDE -> a / nodeValues[arguments[start + 1]];
+            case POW -> Math.pow(a, nodeValues[arguments[start + 1]]);
+            case SIN -> Math.sin(a);
+            case COS -> Math.cos(a);
+            case TAN -> Math.tan(a);
+            case ASIN -> Math.asin(a);
+            case ACOS -> Math.acos(a);
+            case ATAN -> Math.atan(a);
+            case SQRT -> Math.sqrt(a);
+            case EXP -> Math.exp(a);
+            case LOG -> Math.log(a) / Math.log(nodeValues[arguments[start + 1]]);
+            case NEGATE -> -a;
+            case LN -> Math.log(a);
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL ->
+                    FunctionNode.compare(type, a, nodeValues[arguments[start + 1]]);
+            // every node is calculated anyway, so both branches are already there
+            case IF -> FunctionNode.isTrue(a) ? nodeValues[arguments[start + 1]] : nodeValues[arguments[start + 2]];
+            case MIN -> Math.min(a, nodeValues[arguments[start + 1]]);
+            case MAX -> Math.max(a, nodeValues[arguments[start + 1]]);
+            case ABS -> Math.abs(a);
+            case SQUARE -> a * a;
+            case CLAMP -> FunctionNode.clamp(a, nodeValues[arguments[start + 1]], nodeValues[arguments[start + 2]]);
+        };
+    }
+
+    /**
+     * The structure of a node, constants are compared by their bits so that 0.0 and -0.0 stay apart.
+     */
+    private record NodeKey(FunctionNode.Type type, long bits, int slot, List<Integer> arguments) {
+    }
+
+    private static class Builder {
+
+        private final List<NodeKey> keys = new ArrayList<>();
+        private final List<FunctionNode.Type> types = new ArrayList<>();
+        private final Map<NodeKey, Integer> indexes = new HashMap<>();
+        private int visitedNodeCount;
+
+        int add(BaseNode node) {
+            visitedNodeCount++;
+            NodeKey key;
+            if (node instanceof NumberNode numberNode) {
+                key = new NodeKey(null, Double.doubleToRawLongBits(numberNode.getNumber()), -1, List.of());
+            } else if (node instanceof SlotNode slotNode) {
+                key = new NodeKey(null, 0, slotNode.getSlot(), List.of());
+            } else if (node instanceof FunctionNode functionNode) {
+                List<Integer> arguments = new ArrayList<>(functionNode.getArguments().size());
+                for (BaseNode argument : functionNode.getArguments()) {
+                    arguments.add(add(argument));
+                }
+                key = new NodeKey(functionNode.getType(), 0, -1, List.copyOf(arguments));
+            } else {
+                throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+            }
+            Integer index = indexes.get(key);
+            if (index == null) {
+                index = keys.size();
+                keys.add(key);
+                types.add(key.type());
+                indexes.put(key, index);
+            }
+            return index;
+        }
+
+    }
+
+}
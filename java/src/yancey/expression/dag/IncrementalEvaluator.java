@@ -0,0 +1,192 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.dag;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stateful evaluator of an expression group that keeps the last value of every node and,
+ * when variables change, recalculates only the nodes that depend on them.
+ * <p>
+ * Changed nodes are recalculated in topological order, and a node whose new value has the same bits
+ * as the old one does not dirty its parents, so an update costs O(affected nodes).
+ * An evaluator is not thread-safe.
+ */
+public class IncrementalEvaluator {
+
+    private final ExpressionGroup group;
+    private final Map<String, Integer> slotIndexes = new HashMap<>();
+    private final int[] slotNodes;
+    private final int[] parentStarts;
+    private final int[] parents;
+    private final BitSet[] dependencies;
+    private final double[] values;
+    private final double[] nodeValues;
+    private final boolean[] queued;
+    private int[] queue = new int[16];
+    private int queueSize;
+    private long calculationCount;
+
+    public IncrementalEvaluator(ExpressionGroup group, double[] initialValues) {
+        this.group = group;
+        List<String> variableNames = group.getVariableNames();
+        for (int i = 0; i < variableNames.size(); i++) {
+            slotIndexes.put(variableNames.get(i), i);
+        }
+        int nodeCount = group.getNodeCount();
+        this.slotNodes = new int[variableNames.size()];
+        Arrays.fill(slotNodes, -1);
+        this.dependencies = new BitSet[nodeCount];
+        int[] parentCounts = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            BitSet dependency = new BitSet();
+            if (group.getSlot(node) >= 0) {
+                slotNodes[group.getSlot(node)] = node;
+                dependency.set(group.getSlot(node));
+            }
+            for (int i = 0; i < group.getArgumentCount(node); i++) {
+                dependency.or(dependencies[group.getArgument(node, i)]);
+                parentCounts[group.getArgument(node, i) + 1]++;
+            }
+            dependencies[node] = dependency;
+        }
+        this.parentStarts = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            parentStarts[node + 1] = parentStarts[node] + parentCounts[node + 1];
+        }
+        this.parents = new int[parentStarts[nodeCount]];
+        int[] parentEnds = Arrays.copyOf(parentStarts, nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            for (int i = 0; i < group.getArgumentCount(node); i++) {
+                parents[parentEnds[group.getArgument(node, i)]++] = node;
+            }
+        }
+        this.values = Arrays.copyOf(initialValues, variableNames.size());
+        this.nodeValues = group.newNodeValues();
+        this.queued = new boolean[nodeCount];
+        group.calculate(values, nodeValues, new double[group.getExpressionCount()]);
+    }
+
+    public ExpressionGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * The variable slots the expression depends on.
+     */
+    public BitSet getDependencies(int expression) {
+        return (BitSet) dependencies[group.getOutput(expression)].clone();
+    }
+
+    /**
+     * The number of nodes recalculated by updates so far, the cost of the changes.
+     */
+    public long getCalculationCount() {
+        return calculationCount;
+    }
+
+    public double getVariable(int slot) {
+        return values[slot];
+    }
+
+    public void set(String variableName, double value) {
+        Integer slot = slotIndexes.get(variableName);
+        if (slot == null) {
+            throw new RuntimeException("unknown variable name: " + variableName);
+        }
+        set(slot, value);
+    }
+
+    /**
+     * Change a variable, the dependent nodes are recalculated by the next {@link #get(int)}.
+     */
+    public void set(int slot, double value) {
+        if (Double.doubleToRawLongBits(values[slot]) == Double.doubleToRawLongBits(value)) {
+            return;
+        }
+        values[slot] = value;
+        if (slotNodes[slot] >= 0) {
+            enqueue(slotNodes[slot]);
+        }
+    }
+
+    public double get(int expression) {
+        if (queueSize > 0) {
+            update();
+        }
+        return nodeValues[group.getOutput(expression)];
+    }
+
+    /**
+     * Recalculate every node affected by the variables changed since the last update.
+     */
+    public void update() {
+        while (queueSize > 0) {
+            int node = poll();
+            queued[node] = false;
+            double value = group.calculateNode(node, values, nodeValues);
+            calculationCount++;
+            if (Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(nodeValues[node])) {
+                continue;
+            }
+            nodeValues[node] = value;
+            for (int i = parentStarts[node]; i < parentStarts[node + 1]; i++) {
+                enqueue(parents[i]);
+            }
+        }
+    }
+
+    // a binary min-heap of node indexes, so nodes are recalculated after their arguments
+
+    private void enqueue(int node) {
+        if (queued[node]) {
+            return;
+        }
+        queued[node] = true;
+        if (queueSize == queue.length) {
+            queue = Arrays.copyOf(queue, queueSize * 2);
+        }
+        int index = queueSize++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (queue[parent] <= node) {
+                break;
+            }
+            queue[index] = queue[parent];
+            index = parent;
+        }
+        queue[index] = node;
+    }
+
+    private int poll() {
+        int result = queue[0];
+        int last = queue[--queueSize];
+        int index = 0;
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= queueSize) {
+                break;
+            }
+            if (child + 1 < queueSize && queue[child + 1] < queue[child]) {
+                child++;
+            }
+            if (queue[child] >= last) {
+                break;
+            }
+            queue[index] = queue[child];
+            index = child;
+        }
+        queue[index] = last;
+        return result;
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.diff;
+
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.SlotNode;
+
+import java.util.List;
+
+/**
+ * Builds the symbolic derivative of a bound tree for one variable slot.
+ * Products with 0 or 1 and sums with 0 are simplified while building, as usual for symbolic derivatives.
+ * Comparisons are constant between their jumps, so their derivative is 0, and the derivative of {@code if},
+ * min, max and abs is the one of the side that is taken.
+ */
+public class Derivative {
+
+    private static final NumberNode ZERO = new NumberNode(0);
+    private static final NumberNode ONE = new NumberNode(1);
+
+    private Derivative() {
+    }
+
+    public static BaseNode derive(BaseNode node, int slot) {
+        if (!(node instanceof FunctionNode functionNode)) {
+            if (node instanceof NumberNode) {
+                return ZERO;
+            } else if (node instanceof SlotNode slotNode) {
+                return slotNode.getSlot() == slot ? ONE : ZERO;
+            }
+            throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+        }
+        List<BaseNode> arguments = functionNode.getArguments();
+        BaseNode a = arguments.get(0);
+        BaseNode da = derive(a, slot);
+        BaseNode b = arguments.size() > 1 ? arguments.get(1) : null;
+        BaseNode db = b != null ? derive(b, slot) : null;
+        return switch (functionNode.getType()) {
+            case ADD -> add(da, db);
+            case MINUS -> minus(da, db);
+            case MULTIPY -> add(multiply(da, b), multiply(a, db));
+            case DIVIDE -> divide(minus(multiply(da, b), multiply(a, db)), multiply(b, b));
+            case POW -> {
+                if (isZero(db)) {
+                    // b * a^(b-1) * a'
+                    yield multiply(multiply(b, function(FunctionNode.Type.POW, a, minus(b, ONE))), da);
+                }
+                // a^b * (b' * ln(a) + b * a' / a)
+                yield multiply(node, add(multiply(db, function(FunctionNode.Type.LN, a)), divide(multiply(b, da), a)));
+            }
+            case SIN -> multiply(function(FunctionNode.Type.COS, a), da);
+            case COS -> negate(multiply(function(FunctionNode.Type.SIN, a), da));
+            case TAN -> {
+                BaseNode cos = function(FunctionNode.Type.COS, a);
+                yield divide(da, multiply(cos, cos));
+            }
+            case ASIN -> divide(da, function(FunctionNode.Type.SQRT, minus(ONE, multiply(a, a))));
+            case ACOS -> negate(divide(da, function(FunctionNode.Type.SQRT, minus(ONE, multiply(a, a)))));
+            case ATAN -> divide(da, add(ONE, multiply(a, a)));
+            case SQRT -> divide(da, multiply(new NumberNode(2), node));
+            case EXP -> multiply(node, da);
+            case LOG -> {
+                // (a' / a * ln(b) - ln(a) * b' / b) / ln(b)^2
+                BaseNode lnA = function(FunctionNode.Type.LN, a);
+                BaseNode lnB = function(FunctionNode.Type.LN, b);
+                yield divide(minus(multiply(divide(da, a), lnB), multiply(lnA, divide(db, b))), multiply(lnB, lnB));
+            }
+            case NEGATE -> negate(da);
+            case SQUARE -> multiply(multiply(new NumberNode(2), a), da);
+            case LN -> divide(da, a);
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL -> ZERO;
+            case IF -> select(a, db, derive(arguments.get(2), slot));
+            case MIN -> select(function(FunctionNode.Type.LESS_EQUAL, a, b), da, db);
+            case MAX -> select(function(FunctionNode.Type.GREATER_EQUAL, a, b), da, db);
+            case ABS -> select(function(FunctionNode.Type.LESS, a, ZERO), negate(da), da);
+            case CLAMP -> derive(function(FunctionNode.Type.MIN, function(FunctionNode.Type.MAX, a, b), arguments.get(2)), slot);
+        };
+    }
+
+    private static boolean isZero(BaseNode node) {
+        return node instanceof NumberNode numberNode && numberNode.getNumber() == 0;
+    }
+
+    private static boolean isOne(BaseNode node) {
+        return node instanceof NumberNode numberNode && numberNode.getNumber() == 1;
+    }
+
+    private static BaseNode function(FunctionNode.Type type, BaseNode... arguments) {
+        return FunctionNode.of(type, List.of(arguments));
+    }
+
+    private static BaseNode add(BaseNode a, BaseNode b) {
+        if (isZero(a)) {
+            return b;
+        } else if (isZero(b)) {
+            return a;
+        }
+        return function(FunctionNode.Type.ADD, a, b);
+    }
+
+    private static BaseNode minus(BaseNode a, BaseNode b) {
+        if (isZero(b)) {
+            return a;
+        } else if (isZero(a)) {
+            return negate(b);
+        }
+        return function(FunctionNode.Type.MINUS, a, b);
+    }
+
+    private static BaseNode multiply(BaseNode a, BaseNode b) {
+        if (isZero(a) || isZero(b)) {
+            return ZERO;
+        } else if (isOne(a)) {
+            return b;
+        } else if (isOne(b)) {
+            return a;
+        }
+        return function(FunctionNode.Type.MULTIPY, a, b);
+    }
+
+    private static BaseNode divide(BaseNode a, BaseNode b) {
+        if (isZero(a)) {
+            return ZERO;
+        } else if (isOne(b)) {
+            return a;
+        }
+        return function(FunctionNode.Type.DIVIDE, a, b);
+    }
+
+    private static BaseNode select(BaseNode condition, BaseNode a, BaseNode b) {
+        if (a == b || isZero(a) && isZero(b)) {
+            return a;
+        }
+        return function(FunctionNode.Type.IF, condition, a, b);
+    }
+
+    private static BaseNode negate(BaseNode a) {
+        if (isZero(a)) {
+            return ZERO;
+        }
+        return function(FunctionNode.Type.NEGATE, a);
+    }
+
+}
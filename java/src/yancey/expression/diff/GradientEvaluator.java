@@ -0,0 +1,129 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.diff;
+
+import yancey.expression.ast.Expression;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.dag.ExpressionGroup;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Calculates the value of an expression and its partial derivatives for every variable
+ * with reverse-mode automatic differentiation: one forward sweep over the nodes of the expression DAG
+ * and one reverse sweep that accumulates the adjoint of every node.
+ * <p>
+ * An evaluator keeps scratch buffers and is not thread-safe, so create one per thread.
+ */
+public class GradientEvaluator {
+
+    private final ExpressionGroup group;
+    private final int output;
+    private final double[] nodeValues;
+    private final double[] adjoints;
+
+    public GradientEvaluator(List<String> variableNames, Expression expression) {
+        this.group = ExpressionGroup.compile(variableNames, expression);
+        this.output = group.getOutput(0);
+        this.nodeValues = group.newNodeValues();
+        this.adjoints = new double[group.getNodeCount()];
+    }
+
+    public List<String> getVariableNames() {
+        return group.getVariableNames();
+    }
+
+    /**
+     * Calculate the expression, write the partial derivative for the i-th variable to gradient[i] and return the value.
+     */
+    public double calculate(double[] values, double[] gradient) {
+        for (int node = 0; node <= output; node++) {
+            nodeValues[node] = group.calculateNode(node, values, nodeValues);
+        }
+        Arrays.fill(adjoints, 0, output + 1, 0.0);
+        Arrays.fill(gradient, 0, group.getVariableNames().size(), 0.0);
+        adjoints[output] = 1.0;
+        for (int node = output; node >= 0; node--) {
+            double adjoint = adjoints[node];
+            if (adjoint == 0.0) {
+                continue;
+            }
+            if (group.getType(node) == null) {
+                if (group.getSlot(node) >= 0) {
+                    gradient[group.getSlot(node)] += adjoint;
+                }
+                continue;
+            }
+            int a = group.getArgument(node, 0);
+            int b = group.getArgumentCount(node) > 1 ? group.getArgument(node, 1) : -1;
+            double value = nodeValues[node];
+            double va = nodeValues[a];
+            double vb = b >= 0 ? nodeValues[b] : 0.0;
+            switch (group.getType(node)) {
+                case ADD -> {
+                    adjoints[a] += adjoint;
+                    adjoints[b] += adjoint;
+                }
+                case MINUS -> {
+                    adjoints[a] += adjoint;
+                    adjoints[b] -= adjoint;
+                }
+                case MULTIPY -> {
+                    adjoints[a] += adjoint * vb;
+                    adjoints[b] += adjoint * va;
+                }
+                case DIVIDE -> {
+                    adjoints[a] += adjoint / vb;
+                    adjoints[b] -= adjoint * value / vb;
+                }
+                case POW -> {
+                    adjoints[a] += adjoint * vb * Math.pow(va, vb - 1);
+                    if (!group.isConstant(b)) {
+                        adjoints[b] += adjoint * (va == 0.0 ? 0.0 : value * Math.log(va));
+                    }
+                }
+                case SIN -> adjoints[a] += adjoint * Math.cos(va);
+                case COS -> adjoints[a] -= adjoint * Math.sin(va);
+                case TAN -> adjoints[a] += adjoint * (1 + value * value);
+                case ASIN -> adjoints[a] += adjoint / Math.sqrt(1 - va * va);
+                case ACOS -> adjoints[a] -= adjoint / Math.sqrt(1 - va * va);
+                case ATAN -> adjoints[a] += adjoint / (1 + va * va);
+                case SQRT -> adjoints[a] += adjoint * 0.5 / value;
+                case EXP -> adjoints[a] += adjoint * value;
+                case LOG -> {
+                    double lnB = Math.log(vb);
+                    adjoints[a] += adjoint / (va * lnB);
+                    if (!group.isConstant(b)) {
+                        adjoints[b] -= adjoint * value / (vb * lnB);
+                    }
+                }
+                case NEGATE -> adjoints[a] -= adjoint;
+                case SQUARE -> adjoints[a] += adjoint * 2 * va;
+                case LN -> adjoints[a] += adjoint / va;
+                case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL -> {
+                }
+                // the adjoint only flows into the side that is taken, as in Derivative
+                case IF -> adjoints[group.getArgument(node, FunctionNode.isTrue(va) ? 1 : 2)] += adjoint;
+                case MIN -> adjoints[va <= vb ? a : b] += adjoint;
+                case MAX -> adjoints[va >= vb ? a : b] += adjoint;
+                case ABS -> adjoints[a] += va < 0 ? -adjoint : adjoint;
+                case CLAMP -> {
+                    int max = group.getArgument(node, 2);
+                    if (Math.max(va, vb) <= nodeValues[max]) {
+                        adjoints[va >= vb ? a : b] += adjoint;
+                    } else {
+                        adjoints[max] += adjoint;
+                    }
+                }
+            }
+        }
+        return nodeValues[output];
+    }
+
+}
@@ -0,0 +1,258 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.fastmath;
+
+/**
+ * Table based approximations of the functions of {@link Math} that dominate the time of evaluating a tree.
+ * The argument is split into a table point and a small remainder, the remainder goes through a short
+ * truncated series, and the two are combined with an addition formula. Special values and arguments
+ * outside the ranges below fall back to {@link Math}.
+ * <p>
+ * Maximum errors against {@link Math}, measured over tens of millions of arguments and rounded up:
+ * <pre>
+ * function  range                         double                    float
+ * sin, cos  |x| &lt;= 1e5                     absolute 1e-15            absolute 1e-7
+ * exp       |x| &lt;= 700 (float: 86)         relative 1e-15            relative 1e-7
+ * log       normal x &gt; 0                  absolute 1e-15 when x is  absolute 1e-7 when x is
+ *                                         in [0.5, 2], otherwise    in [0.5, 2], otherwise
+ *                                         relative 1e-15            relative 1e-7
+ * pow       x &gt; 0, t = |y * log(x)|       relative 1e-15 * (1 + t)  relative 1e-7 * (1 + t)
+ * </pre>
+ * The float variants take and return floats and use shorter series, whose error is far below the
+ * rounding to float. They compute in double with the same tables, since the JVM has no faster
+ * scalar float arithmetic and every conversion between the two costs time.
+ */
+public final class FastMath {
+
+    public enum Precision {
+        DOUBLE,
+        FLOAT,
+    }
+
+    private static final int SIN_TABLE_SIZE = 128;
+    private static final double SIN_TABLE_SCALE = 64 / Math.PI;
+    // pi / 64 in three parts, the first two have at most 32 significant bits so that n * part is exact
+    private static final double PI_OVER_64_HIGH = 1.5707963267341256 / 32;
+    private static final double PI_OVER_64_LOW = 6.077100506303966e-11 / 32;
+    private static final double PI_OVER_64_LOWEST = 2.0222662487959506e-21 / 32;
+    private static final double MAX_TRIGONOMETRIC_ARGUMENT = 1e5;
+    private static final double[] SIN = new double[SIN_TABLE_SIZE];
+    private static final double[] COS = new double[SIN_TABLE_SIZE];
+
+    private static final int EXP_TABLE_SIZE = 64;
+    private static final double EXP_TABLE_SCALE = 64 / Math.log(2);
+    // ln(2) / 64 in two parts, the first one has at most 32 significant bits
+    private static final double LN2_OVER_64_HIGH = 6.93147180369123816490e-01 / 64;
+    private static final double LN2_OVER_64_LOW = 1.90821492927058770002e-10 / 64;
+    private static final double ROUND_SHIFT = 0x1.8p52;
+    private static final double MAX_EXP_ARGUMENT = 700;
+    private static final double MAX_EXP_FLOAT_ARGUMENT = 86;
+    private static final double[] EXP2 = new double[EXP_TABLE_SIZE];
+
+    // the mantissa is moved into [0.75, 1.5), whose top 7 bits select a bin with a short center c
+    private static final int LOG_TABLE_SIZE = 128;
+    private static final double LN2_HIGH = 6.93147180369123816490e-01;
+    private static final double LN2_LOW = 1.90821492927058770002e-10;
+    private static final double LN2 = 0.6931471805599453;
+    private static final double[] CENTER = new double[LOG_TABLE_SIZE];
+    private static final double[] INVERSE = new double[LOG_TABLE_SIZE];
+    private static final double[] LOG = new double[LOG_TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < SIN_TABLE_SIZE; i++) {
+            SIN[i] = Math.sin(i * Math.PI / 64);
+            COS[i] = Math.cos(i * Math.PI / 64);
+        }
+        for (int i = 0; i < EXP_TABLE_SIZE; i++) {
+            EXP2[i] = Math.pow(2, i / 64.0);
+        }
+        for (int i = 0; i < LOG_TABLE_SIZE; i++) {
+            // bins are 1/256 wide below 1 and 1/128 wide above it
+            CENTER[i] = i < 64 ? 0.75 + (i + 0.5) / 256 : 1 + (i - 63.5) / 128;
+            INVERSE[i] = 1 / CENTER[i];
+            LOG[i] = Math.log(CENTER[i]);
+        }
+    }
+
+    private FastMath() {
+    }
+
+    public static double sin(double x) {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT)) {
+            return Math.sin(x);
+        }
+        double shifted = x * SIN_TABLE_SCALE + ROUND_SHIFT;
+        double r = reduceTrigonometric(x, shifted - ROUND_SHIFT);
+        int index = (int) Double.doubleToRawLongBits(shifted) & (SIN_TABLE_SIZE - 1);
+        return SIN[index] * cosSeries(r) + COS[index] * sinSeries(r);
+    }
+
+    public static double cos(double x) {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT)) {
+            return Math.cos(x);
+        }
+        double shifted = x * SIN_TABLE_SCALE + ROUND_SHIFT;
+        double r = reduceTrigonometric(x, shifted - ROUND_SHIFT);
+        int index = (int) Double.doubleToRawLongBits(shifted) & (SIN_TABLE_SIZE - 1);
+        return COS[index] * cosSeries(r) - SIN[index] * sinSeries(r);
+    }
+
+    public static double exp(double x) {
+        if (!(Math.abs(x) <= MAX_EXP_ARGUMENT)) {
+            return Math.exp(x);
+        }
+        // adding 1.5 * 2^52 rounds to an integer n that can be read from the low bits
+        double shifted = x * EXP_TABLE_SCALE + ROUND_SHIFT;
+        long m = Double.doubleToRawLongBits(shifted);
+        double n = shifted - ROUND_SHIFT;
+        double r = (x - n * LN2_OVER_64_HIGH) - n * LN2_OVER_64_LOW;
+        // e^r up to r^5 for |r| <= ln(2) / 128
+        double r2 = r * r;
+        double p = 1 + r + r2 * (0.5 + r * (1.0 / 6)) + r2 * r2 * (1.0 / 24 + r * (1.0 / 120));
+        // the bits of n / 64 above the exponent field are shifted out
+        return EXP2[(int) m & (EXP_TABLE_SIZE - 1)] * p * Double.longBitsToDouble(((m >> 6) + 1023) << 52);
+    }
+
+    public static double log(double x) {
+        long bits = Double.doubleToRawLongBits(x);
+        if (!isPositiveNormal(bits)) {
+            return Math.log(x);
+        }
+        return logNormal(bits);
+    }
+
+    /**
+     * Calculate {@code x^y} as {@code exp(y * log(x))} for positive x, other bases fall back to {@link Math}.
+     */
+    public static double pow(double x, double y) {
+        long bits = Double.doubleToRawLongBits(x);
+        if (!(isPositiveNormal(bits) && Math.abs(y) < Double.POSITIVE_INFINITY)) {
+            return Math.pow(x, y);
+        }
+        return exp(y * logNormal(bits));
+    }
+
+    private static boolean isPositiveNormal(long bits) {
+        return Long.compareUnsigned(bits - 0x0010000000000000L, 0x7FF0000000000000L - 0x0010000000000000L) < 0;
+    }
+
+    private static double logNormal(long bits) {
+        // x = m * 2^exponent with m in [0.75, 1.5)
+        long offset = bits - 0x3FE8000000000000L;
+        int exponent = (int) (offset >> 52);
+        double m = Double.longBitsToDouble(bits - (offset & 0xFFF0000000000000L));
+        int index = (int) (offset >>> 45) & (LOG_TABLE_SIZE - 1);
+        // m - c is exact, |r| <= 1 / 256
+        double r = (m - CENTER[index]) * INVERSE[index];
+        double r2 = r * r;
+        // ln(1 + r) up to r^7
+        double p = r2 * (-0.5 + r * (1.0 / 3)) + r2 * r2 * (-0.25 + r * 0.2 + r2 * (-1.0 / 6 + r * (1.0 / 7)));
+        return exponent * LN2_HIGH + (LOG[index] + (r + (p + exponent * LN2_LOW)));
+    }
+
+    public static float sinFloat(float x) {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT)) {
+            return (float) Math.sin(x);
+        }
+        double shifted = x * SIN_TABLE_SCALE + ROUND_SHIFT;
+        double r = reduceTrigonometric(x, shifted - ROUND_SHIFT);
+        int index = (int) Double.doubleToRawLongBits(shifted) & (SIN_TABLE_SIZE - 1);
+        return (float) (SIN[index] * shortCosSeries(r) + COS[index] * shortSinSeries(r));
+    }
+
+    public static float cosFloat(float x) {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT)) {
+            return (float) Math.cos(x);
+        }
+        double shifted = x * SIN_TABLE_SCALE + ROUND_SHIFT;
+        double r = reduceTrigonometric(x, shifted - ROUND_SHIFT);
+        int index = (int) Double.doubleToRawLongBits(shifted) & (SIN_TABLE_SIZE - 1);
+        return (float) (COS[index] * shortCosSeries(r) - SIN[index] * shortSinSeries(r));
+    }
+
+    public static float expFloat(float x) {
+        if (!(Math.abs(x) <= MAX_EXP_FLOAT_ARGUMENT)) {
+            return (float) Math.exp(x);
+        }
+        return (float) shortExp(x);
+    }
+
+    public static float logFloat(float x) {
+        long bits = Double.doubleToRawLongBits(x);
+        if (!isPositiveNormal(bits)) {
+            return (float) Math.log(x);
+        }
+        return (float) shortLogNormal(bits);
+    }
+
+    public static float powFloat(float x, float y) {
+        long bits = Double.doubleToRawLongBits(x);
+        if (!(isPositiveNormal(bits) && Math.abs(y) < Float.POSITIVE_INFINITY)) {
+            return (float) Math.pow(x, y);
+        }
+        double exponent = y * shortLogNormal(bits);
+        if (!(Math.abs(exponent) <= MAX_EXP_FLOAT_ARGUMENT)) {
+            return (float) Math.exp(exponent);
+        }
+        return (float) shortExp(exponent);
+    }
+
+    /**
+     * e^x with the series up to r^3, for |x| &lt;= {@link #MAX_EXP_FLOAT_ARGUMENT}.
+     */
+    private static double shortExp(double x) {
+        double shifted = x * EXP_TABLE_SCALE + ROUND_SHIFT;
+        long m = Double.doubleToRawLongBits(shifted);
+        double n = shifted - ROUND_SHIFT;
+        double r = x - n * (LN2_OVER_64_HIGH + LN2_OVER_64_LOW);
+        double p = 1 + r + r * r * (0.5 + r * (1.0 / 6));
+        return EXP2[(int) m & (EXP_TABLE_SIZE - 1)] * p * Double.longBitsToDouble(((m >> 6) + 1023) << 52);
+    }
+
+    /**
+     * ln(x) with the series up to r^3.
+     */
+    private static double shortLogNormal(long bits) {
+        long offset = bits - 0x3FE8000000000000L;
+        int exponent = (int) (offset >> 52);
+        double m = Double.longBitsToDouble(bits - (offset & 0xFFF0000000000000L));
+        int index = (int) (offset >>> 45) & (LOG_TABLE_SIZE - 1);
+        double r = (m - CENTER[index]) * INVERSE[index];
+        return exponent * LN2 + (LOG[index] + (r + r * r * (-0.5 + r * (1.0 / 3))));
+    }
+
+    private static double reduceTrigonometric(double x, double n) {
+        return ((x - n * PI_OVER_64_HIGH) - n * PI_OVER_64_LOW) - n * PI_OVER_64_LOWEST;
+    }
+
+    /**
+     * sin(r) up to r^7 for |r| <= pi / 128.
+     */
+    private static double sinSeries(double r) {
+        double r2 = r * r;
+        return r + r * r2 * (-1.0 / 6 + r2 * (1.0 / 120 - r2 * (1.0 / 5040)));
+    }
+
+    /**
+     * cos(r) up to r^6 for |r| <= pi / 128.
+     */
+    private static double cosSeries(double r) {
+        double r2 = r * r;
+        return 1 + r2 * (-0.5 + r2 * (1.0 / 24 - r2 * (1.0 / 720)));
+    }
+
+    private static double shortSinSeries(double r) {
+        return r - r * r * r * (1.0 / 6);
+    }
+
+    private static double shortCosSeries(double r) {
+        double r2 = r * r;
+        return 1 + r2 * (-0.5 + r2 * (1.0 / 24));
+    }
+
+}
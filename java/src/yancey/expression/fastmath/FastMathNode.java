@@ -0,0 +1,112 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.fastmath;
+
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sin, cos, exp, ln, log or pow node evaluated with {@link FastMath} instead of {@link Math}.
+ * It keeps the type and the arguments of the node it replaces, so code that switches on the type,
+ * like the compilers and the derivative, still sees the exact function.
+ */
+public final class FastMathNode extends FunctionNode {
+
+    private final BaseNode left;
+    private final BaseNode right;
+    private final boolean floatPrecision;
+
+    public FastMathNode(Type type, List<BaseNode> arguments, FastMath.Precision precision) {
+        super(type, arguments);
+        switch (type) {
+            case SIN, COS, EXP, LN, LOG, POW -> {
+            }
+            default -> throw new RuntimeException("not a fast math function: " + type);
+        }
+        this.left = arguments.get(0);
+        this.right = arguments.size() > 1 ? arguments.get(1) : null;
+        this.floatPrecision = precision == FastMath.Precision.FLOAT;
+    }
+
+    /**
+     * Replace every node of the tree that has a fast math function with a {@link FastMathNode}.
+     * Shared nodes stay shared.
+     */
+    public static BaseNode rewrite(BaseNode node, FastMath.Precision precision) {
+        return rewrite(node, precision, new IdentityHashMap<>());
+    }
+
+    private static BaseNode rewrite(BaseNode node, FastMath.Precision precision, Map<BaseNode, BaseNode> rewritten) {
+        if (!(node instanceof FunctionNode functionNode)) {
+            return node;
+        }
+        BaseNode result = rewritten.get(node);
+        if (result != null) {
+            return result;
+        }
+        List<BaseNode> arguments = new ArrayList<>(functionNode.getArguments().size());
+        boolean changed = false;
+        for (BaseNode argument : functionNode.getArguments()) {
+            BaseNode rewrittenArgument = rewrite(argument, precision, rewritten);
+            changed |= rewrittenArgument != argument;
+            arguments.add(rewrittenArgument);
+        }
+        result = switch (functionNode.getType()) {
+            case SIN, COS, EXP, LN, LOG, POW -> new FastMathNode(functionNode.getType(), arguments, precision);
+            default -> changed ? FunctionNode.of(functionNode.getType(), arguments) : node;
+        };
+        rewritten.put(node, result);
+        return result;
+    }
+
+    public FastMath.Precision getPrecision() {
+        return floatPrecision ? FastMath.Precision.FLOAT : FastMath.Precision.DOUBLE;
+    }
+
+    @Override
+    public double calculate(Map<String, Double> variables) {
+        return apply(left.calculate(variables), right == null ? 0 : right.calculate(variables));
+    }
+
+    @Override
+    public double calculate(double[] values) {
+        return apply(left.calculate(values), right == null ? 0 : right.calculate(values));
+    }
+
+    private double apply(double a, double b) {
+        if (floatPrecision) {
+            return switch (getType()) {
+                case SIN -> FastMath.sinFloat((float) a);
+                case COS -> FastMath.cosFloat((float) a);
+                case EXP -> FastMath.expFloat((float) a);
+                case LN -> FastMath.logFloat((float) a);
+                case LOG -> FastMath.logFloat((float) a) / FastMath.logFloat((float) b);
+                default -> FastMath.powFloat((float) a, (float) b);
+            };
+        }
+        return switch (getType()) {
+            case SIN -> FastMath.sin(a);
+            case COS -> FastMath.cos(a);
+            case EXP -> FastMath.exp(a);
+            case LN -> FastMath.log(a);
+            case LOG -> FastMath.log(a) / FastMath.log(b);
+            default -> FastMath.pow(a, b);
+        };
+    }
+
+    @Override
+    public FunctionNode withArguments(List<BaseNode> arguments) {
+        return new FastMathNode(getType(), arguments, getPrecision());
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.io;
+
+import yancey.expression.ast.Expression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.VariableNode;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary form of a parsed and optimized expression, so it can be loaded without lexing and parsing.
+ * <p>
+ * Version 1 is a version byte, a table of variable names and the nodes of the tree in prefix order.
+ * Unsigned integers are LEB128 varints, names are UTF-8 and numbers are the 8 bytes of their IEEE-754 bits,
+ * so a deserialized expression calculates bit-identical results.
+ * <pre>
+ * expression = version:u8 nameCount:varint (length:varint utf8)* node
+ * node       = 0 bits:i64                                 number
+ *            | 1 name:varint                               variable
+ *            | 2 type:u8 argumentCount:u8 node*            function, type is the ordinal of FunctionNode.Type
+ * </pre>
+ * New function types must be appended to {@link FunctionNode.Type} so that the ordinals stay stable.
+ */
+public class ExpressionSerializer {
+
+    public static final int VERSION = 1;
+
+    private static final int TAG_NUMBER = 0;
+    private static final int TAG_VARIABLE = 1;
+    private static final int TAG_FUNCTION = 2;
+    private static final FunctionNode.Type[] TYPES = FunctionNode.Type.values();
+
+    private ExpressionSerializer() {
+    }
+
+    public static byte[] serialize(Expression expression) {
+        Map<String, Integer> names = new HashMap<>();
+        List<String> nameTable = new ArrayList<>();
+        ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        writeNode(expression.getRoot(), nodes, names, nameTable);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(nodes.size() + 16);
+        out.write(VERSION);
+        writeVarint(out, nameTable.size());
+        for (String name : nameTable) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.writeBytes(nodes.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * Read one expression from the position of the buffer and advance the position past it.
+     */
+    public static Expression deserialize(ByteBuffer buffer) {
+        int version = buffer.get() & 0xff;
+        if (version != VERSION) {
+            throw new RuntimeException("unsupported expression version: " + version);
+        }
+        String[] names = new String[readVarint(buffer)];
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = new byte[readVarint(buffer)];
+            buffer.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new Expression(readNode(buffer, names));
+    }
+
+    private static void writeNode(BaseNode node, ByteArrayOutputStream out, Map<String, Integer> names, List<String> nameTable) {
+        if (node instanceof NumberNode numberNode) {
+            out.write(TAG_NUMBER);
+            long bits = Double.doubleToRawLongBits(numberNode.getNumber());
+            for (int i = 56; i >= 0; i -= 8) {
+                out.write((int) (bits >>> i));
+            }
+        } else if (node instanceof VariableNode variableNode) {
+            Integer index = names.get(variableNode.getVariableName());
+            if (index == null) {
+                index = nameTable.size();
+                names.put(variableNode.getVariableName(), index);
+                nameTable.add(variableNode.getVariableName());
+            }
+            out.write(TAG_VARIABLE);
+            writeVarint(out, index);
+        } else if (node instanceof FunctionNode functionNode) {
+            out.write(TAG_FUNCTION);
+            out.write(functionNode.getType().ordinal());
+            out.write(functionNode.getArguments().size());
+            for (BaseNode argument : functionNode.getArguments()) {
+                writeNode(argument, out, names, nameTable);
+            }
+        } else {
+            throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+        }
+    }
+
+    private static BaseNode readNode(ByteBuffer buffer, String[] names) {
+        int tag = buffer.get() & 0xff;
+        switch (tag) {
+            case TAG_NUMBER -> {
+                return new NumberNode(Double.longBitsToDouble(buffer.getLong()));
+            }
+            case TAG_VARIABLE -> {
+                return new VariableNode(names[readVarint(buffer)]);
+            }
+            case TAG_FUNCTION -> {
+                int type = buffer.get() & 0xff;
+                if (type >= TYPES.length) {
+                    throw new RuntimeException("unknown function type: " + type);
+                }
+                int argumentCount = buffer.get() & 0xff;
+                List<BaseNode> arguments = new ArrayList<>(argumentCount);
+                for (int i = 0; i < argumentCount; i++) {
+                    arguments.add(readNode(buffer, names));
+                }
+                return FunctionNode.of(TYPES[type], arguments);
+            }
+            default -> throw new RuntimeException("unknown node tag: " + tag);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get() & 0xff;
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new RuntimeException("malformed varint");
+    }
+
+}
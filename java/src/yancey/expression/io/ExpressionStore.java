@@ -0,0 +1,135 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.io;
+
+import yancey.expression.ast.Expression;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A file of many serialized expressions that is memory-mapped and decoded lazily, one expression at a time
+ * on its first use, so opening a store costs a map call regardless of how many expressions it holds.
+ * <p>
+ * The file is a header followed by the expressions in the format of {@link ExpressionSerializer}:
+ * <pre>
+ * store = magic:i32 version:i32 count:i32 offset:i32 * (count + 1) expression * count
+ * </pre>
+ * Offsets are relative to the first expression, so a store is limited to 2 GiB.
+ * Like every expression that is not parsed, a decoded one has the tree fingerprint of
+ * {@link yancey.expression.metrics.ExpressionMetrics#profile(yancey.expression.ast.node.BaseNode)} in the metrics,
+ * not the fingerprint of its formula.
+ * A store can be read by any number of threads.
+ */
+public class ExpressionStore {
+
+    public static final int MAGIC = 0x59455850;
+    public static final int VERSION = 1;
+
+    private final ByteBuffer data;
+    private final int[] offsets;
+    private final AtomicReferenceArray<Expression> expressions;
+
+    private ExpressionStore(ByteBuffer data, int[] offsets) {
+        this.data = data;
+        this.offsets = offsets;
+        this.expressions = new AtomicReferenceArray<>(offsets.length - 1);
+    }
+
+    public static void write(Path path, List<Expression> expressions) throws IOException {
+        List<byte[]> records = new ArrayList<>(expressions.size());
+        long length = 0;
+        for (Expression expression : expressions) {
+            byte[] record = ExpressionSerializer.serialize(expression);
+            records.add(record);
+            length += record.length;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new RuntimeException("expression store is larger than 2 GiB");
+        }
+        try (OutputStream outputStream = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] record : records) {
+                offset += record.length;
+                out.writeInt(offset);
+            }
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+    }
+
+    public static ExpressionStore open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("expression store is larger than 2 GiB");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new RuntimeException("not an expression store: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new RuntimeException("unsupported expression store version: " + version);
+        }
+        int count = buffer.getInt();
+        if (count < 0 || ((long) count + 1) * 4 > buffer.remaining()) {
+            throw new RuntimeException("corrupted expression store: " + path);
+        }
+        int[] offsets = new int[count + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + offsets.length * 4);
+        ByteBuffer data = buffer.slice();
+        // every expression takes at least one byte, so the offsets start at 0, increase and end within the data
+        boolean valid = offsets[0] == 0 && offsets[count] <= data.remaining();
+        for (int i = 0; i < count && valid; i++) {
+            valid = offsets[i] < offsets[i + 1];
+        }
+        if (!valid) {
+            throw new RuntimeException("corrupted expression store: " + path);
+        }
+        return new ExpressionStore(data, offsets);
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Get the expression at the index, decoding it from the mapped file on first use.
+     */
+    public Expression get(int index) {
+        Expression expression = expressions.get(index);
+        if (expression == null) {
+            expression = ExpressionSerializer.deserialize(data.slice(offsets[index], offsets[index + 1] - offsets[index]));
+            if (!expressions.compareAndSet(index, null, expression)) {
+                expression = expressions.get(index);
+            }
+        }
+        return expression;
+    }
+
+}
@@ -0,0 +1,15 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.lexer;
+
+@FunctionalInterface
+public interface CharPredicate {
+
+    boolean test(char character);
+
+}
@@ -16,7 +16,19 @@ public class Lexer {
     }
 
     public static List<Token> lex(String string) {
-        List<Token> result = new ArrayList<>();
+        TokenBuffer tokenBuffer = lex(string, new TokenBuffer());
+        List<Token> result = new ArrayList<>(tokenBuffer.size());
+        for (int i = 0; i < tokenBuffer.size(); i++) {
+            result.add(tokenBuffer.getToken(i));
+        }
+        return result;
+    }
+
+    /**
+     * Lex the string into the token buffer without creating an object per token.
+     */
+    public static TokenBuffer lex(CharSequence string, TokenBuffer tokenBuffer) {
+        tokenBuffer.reset(string);
         StringReader stringReader = new StringReader(string);
         while (stringReader.hasNext()) {
             char peek = stringReader.peek();
@@ -24,26 +36,62 @@ public class Lexer {
                 stringReader.skip();
                 continue;
             }
-            result.add(switch (peek) {
-                case '+' -> new Token(Token.TokenType.ADD, String.valueOf(stringReader.read()));
-                case '-' -> new Token(Token.TokenType.MINUS, String.valueOf(stringReader.read()));
-                case '*' -> new Token(Token.TokenType.MULTIPLY, String.valueOf(stringReader.read()));
-                case '/' -> new Token(Token.TokenType.DIVIDE, String.valueOf(stringReader.read()));
-                case '^' -> new Token(Token.TokenType.POW, String.valueOf(stringReader.read()));
-                case '(' -> new Token(Token.TokenType.LEFT_BRACKET, String.valueOf(stringReader.read()));
-                case ')' -> new Token(Token.TokenType.RIGHT_BRACKET, String.valueOf(stringReader.read()));
-                case ',' -> new Token(Token.TokenType.COMMA, String.valueOf(stringReader.read()));
-                case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '.' ->
-                        new Token(Token.TokenType.NUMBER, stringReader.collect(
-                                character -> (character >= '0' && character <= '9') || character == '.'));
-                default -> new Token(Token.TokenType.STRING, stringReader.collect(
-                        character -> !List.of('+', '-', '*', '/', '^', '(', ')', ',').contains(character)));
-            });
+            int start = stringReader.getIndex();
+            Token.TokenType tokenType = switch (peek) {
+                case '+' -> Token.TokenType.ADD;
+                case '-' -> Token.TokenType.MINUS;
+                case '*' -> Token.TokenType.MULTIPLY;
+                case '/' -> Token.TokenType.DIVIDE;
+                case '^' -> Token.TokenType.POW;
+                case '(' -> Token.TokenType.LEFT_BRACKET;
+                case ')' -> Token.TokenType.RIGHT_BRACKET;
+                case ',' -> Token.TokenType.COMMA;
+                case '<' -> Token.TokenType.LESS;
+                case '>' -> Token.TokenType.GREATER;
+                case '=' -> Token.TokenType.EQUAL;
+                case '!' -> Token.TokenType.NOT;
+                case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '.' -> Token.TokenType.NUMBER;
+                default -> Token.TokenType.STRING;
+            };
+            switch (tokenType) {
+                case NUMBER -> stringReader.skipWhile(Lexer::isNumberCharacter);
+                case STRING -> stringReader.skipWhile(character -> !isOperator(character));
+                case LESS, GREATER, EQUAL, NOT -> {
+                    // <=, >=, == and != are one token, a single = also means equal
+                    stringReader.skip();
+                    if (stringReader.hasNext() && stringReader.peek() == '=') {
+                        stringReader.skip();
+                        if (tokenType == Token.TokenType.LESS) {
+                            tokenType = Token.TokenType.LESS_EQUAL;
+                        } else if (tokenType == Token.TokenType.GREATER) {
+                            tokenType = Token.TokenType.GREATER_EQUAL;
+                        } else if (tokenType == Token.TokenType.NOT) {
+                            tokenType = Token.TokenType.NOT_EQUAL;
+                        }
+                    }
+                }
+                default -> stringReader.skip();
+            }
+            tokenBuffer.add(tokenType, start, stringReader.getIndex());
         }
         if (stringReader.hasNext()) {
             throw new RuntimeException("string not read completed");
         }
-        return result;
+        return tokenBuffer;
+    }
+
+    private static boolean isNumberCharacter(char character) {
+        return (character >= '0' && character <= '9') || character == '.';
+    }
+
+    /**
+     * Whether the character is a token of its own, which ends a number or a variable name.
+     */
+    public static boolean isOperator(char character) {
+        return switch (character) {
+            case '+', '-', '*', '/', '^', '(', ')', ',', '<', '>', '=', '!' -> true;
+            default -> false;
+        };
     }
 
 }
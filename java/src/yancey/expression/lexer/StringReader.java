@@ -7,13 +7,11 @@
 
 package yancey.expression.lexer;
 
-import java.util.function.Function;
-
 public class StringReader {
-    private final String str;
+    private final CharSequence str;
     private int index;
 
-    public StringReader(String str) {
+    public StringReader(CharSequence str) {
         this.str = str;
         this.index = 0;
     }
@@ -38,11 +36,19 @@ public class StringReader {
         return peek;
     }
 
-    public String collect(Function<Character, Boolean> filter) {
-        int from = index;
-        while (hasNext() && filter.apply(peek())) {
+    public int getIndex() {
+        return index;
+    }
+
+    public void skipWhile(CharPredicate filter) {
+        while (hasNext() && filter.test(peek())) {
             skip();
         }
-        return str.substring(from, index);
+    }
+
+    public String collect(CharPredicate filter) {
+        int from = index;
+        skipWhile(filter);
+        return str.subSequence(from, index).toString();
     }
 }
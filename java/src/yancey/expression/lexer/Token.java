@@ -20,6 +20,14 @@ public record Token(TokenType tokenType, String string) {
         DIVIDE,
         POW,
         COMMA,
+        LESS,
+        LESS_EQUAL,
+        GREATER,
+        GREATER_EQUAL,
+        EQUAL,
+        NOT_EQUAL,
+        // a ! that is not followed by =, which no rule of the grammar accepts
+        NOT,
     }
 
 }
@@ -0,0 +1,95 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.lexer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable token stream stored as primitive arrays.
+ * Token i has the type {@code getTokenType(i)} and covers the characters [start, end) of the source.
+ */
+public class TokenBuffer {
+
+    private static final Token.TokenType[] TOKEN_TYPES = Token.TokenType.values();
+
+    private CharSequence source = "";
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    public TokenBuffer() {
+        this(16);
+    }
+
+    public TokenBuffer(int initialCapacity) {
+        this.types = new int[initialCapacity];
+        this.starts = new int[initialCapacity];
+        this.ends = new int[initialCapacity];
+    }
+
+    public static TokenBuffer of(List<Token> tokens) {
+        StringBuilder source = new StringBuilder();
+        TokenBuffer tokenBuffer = new TokenBuffer(Math.max(tokens.size(), 1));
+        for (Token token : tokens) {
+            int start = source.length();
+            source.append(token.string());
+            tokenBuffer.add(token.tokenType(), start, source.length());
+        }
+        tokenBuffer.source = source;
+        return tokenBuffer;
+    }
+
+    public void reset(CharSequence source) {
+        this.source = source;
+        this.size = 0;
+    }
+
+    public void add(Token.TokenType tokenType, int start, int end) {
+        if (size == types.length) {
+            int capacity = Math.max(size * 2, 16);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        types[size] = tokenType.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.TokenType getTokenType(int index) {
+        return TOKEN_TYPES[types[index]];
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    public String getString(int index) {
+        return source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    public Token getToken(int index) {
+        return new Token(getTokenType(index), getString(index));
+    }
+
+}
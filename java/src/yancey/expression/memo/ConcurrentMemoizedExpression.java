@@ -0,0 +1,116 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.memo;
+
+import yancey.expression.ast.BoundExpression;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe {@link MemoizedExpression}. The cache is split into stripes by the hash of the values,
+ * each with its own table and lock. Lookups are optimistic reads that only take the read lock when a
+ * write to the stripe raced with them, and the expression is calculated outside of any lock.
+ */
+public class ConcurrentMemoizedExpression {
+
+    private final BoundExpression expression;
+    private final int width;
+    private final int stripeShift;
+    private final ResultTable[] tables;
+    private final StampedLock[] locks;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public ConcurrentMemoizedExpression(BoundExpression expression, int capacity) {
+        this(expression, capacity, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public ConcurrentMemoizedExpression(BoundExpression expression, int capacity, int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+        int stripeCount = Integer.highestOneBit(Math.max(stripes, 2) - 1) << 1;
+        this.expression = expression;
+        this.width = expression.getVariableNames().size();
+        this.stripeShift = Long.SIZE - Integer.numberOfTrailingZeros(stripeCount);
+        this.tables = new ResultTable[stripeCount];
+        this.locks = new StampedLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            tables[i] = new ResultTable((capacity + stripeCount - 1) / stripeCount, width);
+            locks[i] = new StampedLock();
+        }
+    }
+
+    public BoundExpression getExpression() {
+        return expression;
+    }
+
+    public double calculate(double[] values) {
+        long hash = ResultTable.hash(values, width);
+        // the high bits choose the stripe and the low bits the index in its table
+        int stripe = (int) (hash >>> stripeShift);
+        ResultTable table = tables[stripe];
+        StampedLock lock = locks[stripe];
+        long stamp = lock.tryOptimisticRead();
+        int index = table.find(hash, values);
+        double result = index >= 0 ? table.result(index) : 0;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                index = table.find(hash, values);
+                result = index >= 0 ? table.result(index) : 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (index >= 0) {
+            hitCount.increment();
+            return result;
+        }
+        missCount.increment();
+        result = expression.calculate(values);
+        stamp = lock.writeLock();
+        try {
+            table.put(hash, values, result);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return result;
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < tables.length; i++) {
+            long stamp = locks[i].writeLock();
+            try {
+                tables[i].clear();
+            } finally {
+                locks[i].unlockWrite(stamp);
+            }
+        }
+    }
+
+    public int capacity() {
+        return tables.length * tables[0].capacity();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.memo;
+
+import yancey.expression.ast.BoundExpression;
+
+/**
+ * A bound expression with a cache of results keyed by the exact bit patterns of the values,
+ * for expressions that are often calculated with the same values.
+ * The cache has a fixed capacity and older entries are replaced when their slots are needed.
+ * Compare {@link #getHitRate()} with the cost of the expression to decide whether it pays off,
+ * a cheap expression is often faster to calculate than to look up.
+ * <p>
+ * It is not thread-safe, use {@link ConcurrentMemoizedExpression} to share one between threads.
+ */
+public class MemoizedExpression {
+
+    private final BoundExpression expression;
+    private final int width;
+    private final ResultTable table;
+    private long hitCount;
+    private long missCount;
+
+    public MemoizedExpression(BoundExpression expression, int capacity) {
+        this.expression = expression;
+        this.width = expression.getVariableNames().size();
+        this.table = new ResultTable(capacity, width);
+    }
+
+    public BoundExpression getExpression() {
+        return expression;
+    }
+
+    public double calculate(double[] values) {
+        long hash = ResultTable.hash(values, width);
+        int index = table.find(hash, values);
+        if (index >= 0) {
+            hitCount++;
+            return table.result(index);
+        }
+        missCount++;
+        double result = expression.calculate(values);
+        table.put(hash, values, result);
+        return result;
+    }
+
+    public void invalidateAll() {
+        table.clear();
+    }
+
+    public int capacity() {
+        return table.capacity();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.memo;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-capacity open-addressing table from the bit patterns of a tuple of doubles to a result.
+ * Keys are stored flat in a long array, {@code width} longs per entry, so nothing is boxed.
+ * A lookup probes at most {@link #MAX_PROBES} entries from the home index of the hash,
+ * and an insertion into a full probe window replaces the entry at the home index.
+ */
+final class ResultTable {
+
+    static final int MAX_PROBES = 8;
+
+    private final int width;
+    private final int mask;
+    private final long[] hashes;
+    private final long[] keys;
+    private final double[] results;
+
+    ResultTable(int capacity, int width) {
+        int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) - 1) << 1;
+        this.width = width;
+        this.mask = size - 1;
+        this.hashes = new long[size];
+        this.keys = new long[size * width];
+        this.results = new double[size];
+    }
+
+    int capacity() {
+        return hashes.length;
+    }
+
+    /**
+     * Hash the bit patterns of the first width values. The result is never 0, which marks an empty entry.
+     */
+    static long hash(double[] values, int width) {
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < width; i++) {
+            hash = (hash ^ Double.doubleToRawLongBits(values[i])) * 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 32;
+        }
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 29;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Get the index of the entry of the values, or -1 if there is none.
+     */
+    int find(long hash, double[] values) {
+        int home = (int) hash & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = (home + probe) & mask;
+            long entryHash = hashes[index];
+            if (entryHash == 0) {
+                return -1;
+            } else if (entryHash == hash && keyEquals(index, values)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    double result(int index) {
+        return results[index];
+    }
+
+    void put(long hash, double[] values, double result) {
+        int home = (int) hash & mask;
+        int target = home;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = (home + probe) & mask;
+            long entryHash = hashes[index];
+            if (entryHash == 0 || (entryHash == hash && keyEquals(index, values))) {
+                target = index;
+                break;
+            }
+        }
+        int offset = target * width;
+        for (int i = 0; i < width; i++) {
+            keys[offset + i] = Double.doubleToRawLongBits(values[i]);
+        }
+        results[target] = result;
+        hashes[target] = hash;
+    }
+
+    void clear() {
+        Arrays.fill(hashes, 0);
+    }
+
+    private boolean keyEquals(int index, double[] values) {
+        int offset = index * width;
+        for (int i = 0; i < width; i++) {
+            if (keys[offset + i] != Double.doubleToRawLongBits(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,33 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.metrics;
+
+import yancey.expression.ast.node.FunctionNode;
+
+/**
+ * Receives metrics events while {@link ExpressionMetrics#ENABLED} is set.
+ * Listeners are called on the evaluating thread and must be thread-safe and cheap.
+ */
+public interface ExpressionListener {
+
+    default void onParse(String fingerprint, long nanos) {
+    }
+
+    default void onEvaluate(String fingerprint, long nanos) {
+    }
+
+    default void onUnknownVariable(String variableName) {
+    }
+
+    /**
+     * An estimate of how many nodes of the function type were calculated, extrapolated from sampled evaluations.
+     */
+    default void onFunctionSample(FunctionNode.Type type, long count) {
+    }
+
+}
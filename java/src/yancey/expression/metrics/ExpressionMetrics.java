@@ -0,0 +1,165 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.metrics;
+
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.VariableNode;
+import yancey.expression.lexer.Lexer;
+import yancey.expression.lexer.TokenBuffer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The opt-in instrumentation of expression parsing and evaluation.
+ * <p>
+ * It is switched on with {@code -Dyancey.expression.metrics=true}. The switch is a static final field,
+ * so when it is off the JIT removes the instrumentation from the hot paths entirely.
+ * With {@code -Dyancey.expression.metrics.sampleInterval=n}, one in n evaluations on average also reports
+ * the functions of the expression to {@link ExpressionListener#onFunctionSample}.
+ * <p>
+ * Only {@code Expression.calculate} and {@code BoundExpression.calculate} are timed. The compiled expressions,
+ * programs, batch and parallel evaluators run without instrumentation, and unknown variables are only reported
+ * when a name is resolved, not by a slot that is evaluated without being bound.
+ */
+public class ExpressionMetrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("yancey.expression.metrics");
+
+    private static final int SAMPLE_INTERVAL = Integer.getInteger("yancey.expression.metrics.sampleInterval", 0);
+    private static final FunctionNode.Type[] TYPES = FunctionNode.Type.values();
+    private static final List<ExpressionListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private ExpressionMetrics() {
+    }
+
+    public static void addListener(ExpressionListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(ExpressionListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Create the profile of a parsed formula, only called while metrics are enabled.
+     */
+    public static Profile profile(String formula, BaseNode root) {
+        int[] functionCounts = new int[TYPES.length];
+        if (SAMPLE_INTERVAL > 0) {
+            countFunctions(root, functionCounts);
+        }
+        return new Profile(fingerprint(formula), functionCounts);
+    }
+
+    /**
+     * Create the profile of a tree that was not parsed from a formula, e.g. a deserialized one.
+     * Its fingerprint is a hash of the tree, so it differs from the fingerprint of the formula the tree was parsed from.
+     */
+    public static Profile profile(BaseNode root) {
+        int[] functionCounts = new int[TYPES.length];
+        if (SAMPLE_INTERVAL > 0) {
+            countFunctions(root, functionCounts);
+        }
+        return new Profile(String.format("%016x", hash(root, 0xcbf29ce484222325L)), functionCounts);
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the tokens of the formula, as 16 hex digits. Spaces between tokens do not count,
+     * so {@code "a + b"} and {@code "a+b"} share a fingerprint but {@code "2 3"} and {@code "23"} do not.
+     */
+    public static String fingerprint(String formula) {
+        TokenBuffer tokens = Lexer.lex(formula, new TokenBuffer());
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < tokens.size(); i++) {
+            hash = (hash ^ tokens.getTokenType(i).ordinal()) * 0x100000001b3L;
+            for (int j = tokens.getStart(i); j < tokens.getEnd(i); j++) {
+                hash = (hash ^ formula.charAt(j)) * 0x100000001b3L;
+            }
+        }
+        return String.format("%016x", hash);
+    }
+
+    public static void onParse(Profile profile, long nanos) {
+        for (ExpressionListener listener : LISTENERS) {
+            listener.onParse(profile.fingerprint, nanos);
+        }
+    }
+
+    public static void onEvaluate(Profile profile, long nanos) {
+        if (profile == null) {
+            return;
+        }
+        for (ExpressionListener listener : LISTENERS) {
+            listener.onEvaluate(profile.fingerprint, nanos);
+        }
+        if (SAMPLE_INTERVAL > 0 && ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0) {
+            for (int i = 0; i < TYPES.length; i++) {
+                if (profile.functionCounts[i] == 0) {
+                    continue;
+                }
+                for (ExpressionListener listener : LISTENERS) {
+                    listener.onFunctionSample(TYPES[i], (long) profile.functionCounts[i] * SAMPLE_INTERVAL);
+                }
+            }
+        }
+    }
+
+    public static void onUnknownVariable(String variableName) {
+        for (ExpressionListener listener : LISTENERS) {
+            listener.onUnknownVariable(variableName);
+        }
+    }
+
+    private static long hash(BaseNode node, long hash) {
+        if (node instanceof FunctionNode functionNode) {
+            hash = (hash ^ functionNode.getType().ordinal()) * 0x100000001b3L;
+            for (BaseNode argument : functionNode.getArguments()) {
+                hash = hash(argument, hash);
+            }
+            return hash;
+        } else if (node instanceof NumberNode numberNode) {
+            return (hash ^ Double.doubleToRawLongBits(numberNode.getNumber())) * 0x100000001b3L;
+        } else if (node instanceof VariableNode variableNode) {
+            return (hash ^ variableNode.getVariableName().hashCode()) * 0x100000001b3L;
+        }
+        return (hash ^ node.getClass().hashCode()) * 0x100000001b3L;
+    }
+
+    private static void countFunctions(BaseNode node, int[] functionCounts) {
+        if (node instanceof FunctionNode functionNode) {
+            functionCounts[functionNode.getType().ordinal()]++;
+            for (BaseNode argument : functionNode.getArguments()) {
+                countFunctions(argument, functionCounts);
+            }
+        }
+    }
+
+    /**
+     * What the metrics know about one parsed formula.
+     */
+    public static class Profile {
+
+        private final String fingerprint;
+        private final int[] functionCounts;
+
+        private Profile(String fingerprint, int[] functionCounts) {
+            this.fingerprint = fingerprint;
+            this.functionCounts = functionCounts;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.metrics;
+
+import yancey.expression.ast.node.FunctionNode;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that aggregates the metrics events and exposes them as a JMX MBean.
+ * Latency histograms are kept for at most {@code maxFingerprints} formulas, later formulas are only counted.
+ */
+public class MetricsCollector implements ExpressionListener, MetricsCollectorMXBean {
+
+    public static final String OBJECT_NAME = "yancey.expression:type=ExpressionMetrics";
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final int maxFingerprints;
+    private final LongAdder parseCount = new LongAdder();
+    private final LongAdder evaluationCount = new LongAdder();
+    private final LongAdder unknownVariableCount = new LongAdder();
+    private final Map<FunctionNode.Type, LongAdder> functionCounts = new EnumMap<>(FunctionNode.Type.class);
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public MetricsCollector(int maxFingerprints) {
+        this.maxFingerprints = maxFingerprints;
+        for (FunctionNode.Type type : FunctionNode.Type.values()) {
+            functionCounts.put(type, new LongAdder());
+        }
+    }
+
+    /**
+     * Register a collector as a listener and as the MBean {@link #OBJECT_NAME} of the platform MBean server.
+     */
+    public static MetricsCollector install(int maxFingerprints) {
+        MetricsCollector collector = new MetricsCollector(maxFingerprints);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(collector, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new RuntimeException("fail to register metrics MBean", e);
+        }
+        ExpressionMetrics.addListener(collector);
+        return collector;
+    }
+
+    @Override
+    public void onParse(String fingerprint, long nanos) {
+        parseCount.increment();
+    }
+
+    @Override
+    public void onEvaluate(String fingerprint, long nanos) {
+        evaluationCount.increment();
+        Histogram histogram = histograms.get(fingerprint);
+        if (histogram == null) {
+            if (histograms.size() >= maxFingerprints) {
+                return;
+            }
+            histogram = histograms.computeIfAbsent(fingerprint, key -> new Histogram());
+        }
+        histogram.record(nanos);
+    }
+
+    @Override
+    public void onUnknownVariable(String variableName) {
+        unknownVariableCount.increment();
+    }
+
+    @Override
+    public void onFunctionSample(FunctionNode.Type type, long count) {
+        functionCounts.get(type).add(count);
+    }
+
+    @Override
+    public long getParseCount() {
+        return parseCount.sum();
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        return evaluationCount.sum();
+    }
+
+    @Override
+    public long getUnknownVariableCount() {
+        return unknownVariableCount.sum();
+    }
+
+    @Override
+    public Map<String, Long> getFunctionCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        functionCounts.forEach((type, count) -> result.put(type.name(), count.sum()));
+        return result;
+    }
+
+    @Override
+    public Set<String> getFingerprints() {
+        return Set.copyOf(histograms.keySet());
+    }
+
+    @Override
+    public long[] getLatencyHistogram(String fingerprint) {
+        Histogram histogram = histograms.get(fingerprint);
+        long[] result = new long[BUCKET_COUNT];
+        if (histogram != null) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                result[i] = histogram.buckets.get(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double getMeanLatencyNanos(String fingerprint) {
+        Histogram histogram = histograms.get(fingerprint);
+        if (histogram == null || histogram.count.sum() == 0) {
+            return 0;
+        }
+        return (double) histogram.totalNanos.sum() / histogram.count.sum();
+    }
+
+    @Override
+    public void reset() {
+        parseCount.reset();
+        evaluationCount.reset();
+        unknownVariableCount.reset();
+        functionCounts.values().forEach(LongAdder::reset);
+        histograms.clear();
+    }
+
+    private static class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+    }
+
+}
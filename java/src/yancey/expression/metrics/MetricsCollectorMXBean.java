@@ -0,0 +1,34 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.metrics;
+
+import java.util.Map;
+import java.util.Set;
+
+public interface MetricsCollectorMXBean {
+
+    long getParseCount();
+
+    long getEvaluationCount();
+
+    long getUnknownVariableCount();
+
+    Map<String, Long> getFunctionCounts();
+
+    Set<String> getFingerprints();
+
+    /**
+     * Bucket i counts the evaluations of the formula that took [2^i, 2^(i+1)) nanoseconds.
+     */
+    long[] getLatencyHistogram(String fingerprint);
+
+    double getMeanLatencyNanos(String fingerprint);
+
+    void reset();
+
+}
@@ -0,0 +1,254 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.optimizer;
+
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.DivideNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.MathFunctionNode;
+import yancey.expression.ast.node.MultiplyNode;
+import yancey.expression.ast.node.NegateNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.SquareNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folds constant subtrees, removes identities and reduces powers in a parsed tree,
+ * and replaces every function with its specialised node class.
+ * In strict mode every rewrite keeps the result bit-identical to the original tree for all inputs,
+ * so {@code x+0} is kept (it turns {@code -0.0} into {@code 0.0}) while {@code x-0} is removed.
+ * Without strict mode, rewrites that may change the last bit of a result are allowed too:
+ * {@code x^3}, {@code x^4} and {@code x^-1} become multiplications and divisions, {@code x^0.5} becomes
+ * {@code sqrt(x)} (which differs for {@code -0.0} and {@code -Infinity}), and a logarithm to a constant base
+ * multiplies by the reciprocal of the logarithm of the base.
+ */
+public class Optimizer {
+
+    private static final double[] NO_VALUES = new double[0];
+
+    private final boolean strict;
+    private int removedNodeCount;
+
+    public Optimizer() {
+        this(true);
+    }
+
+    public Optimizer(boolean strict) {
+        this.strict = strict;
+    }
+
+    public static BaseNode optimize(BaseNode node) {
+        return new Optimizer().visit(node);
+    }
+
+    public static BaseNode optimize(BaseNode node, boolean strict) {
+        return new Optimizer(strict).visit(node);
+    }
+
+    /**
+     * Optimize the node and add the number of nodes removed from it to {@link #getRemovedNodeCount()}.
+     * Counting walks both trees once more, so the static methods, which are used for every parse, do not count.
+     */
+    public BaseNode optimizeNode(BaseNode node) {
+        BaseNode result = visit(node);
+        removedNodeCount += countNodes(node) - countNodes(result);
+        return result;
+    }
+
+    public int getRemovedNodeCount() {
+        return removedNodeCount;
+    }
+
+    /**
+     * Count the distinct nodes of the tree, a node shared by several parents is counted once.
+     */
+    public static int countNodes(BaseNode node) {
+        Set<BaseNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<BaseNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            BaseNode current = stack.pop();
+            if (visited.add(current) && current instanceof FunctionNode functionNode) {
+                for (BaseNode argument : functionNode.getArguments()) {
+                    stack.push(argument);
+                }
+            }
+        }
+        return visited.size();
+    }
+
+    /**
+     * Optimize the tree bottom up with an explicit stack, so its depth is not limited by the thread stack.
+     * A node shared by several parents is optimized once and stays shared, so that x*x stays a square.
+     */
+    private BaseNode visit(BaseNode root) {
+        Map<BaseNode, BaseNode> optimized = new IdentityHashMap<>();
+        ArrayDeque<BaseNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            BaseNode node = stack.peek();
+            if (!(node instanceof FunctionNode functionNode) || optimized.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            List<BaseNode> arguments = functionNode.getArguments();
+            for (int i = arguments.size() - 1; i >= 0; i--) {
+                if (arguments.get(i) instanceof FunctionNode && !optimized.containsKey(arguments.get(i))) {
+                    stack.push(arguments.get(i));
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                optimized.put(node, visit(functionNode, optimized));
+            }
+        }
+        return root instanceof FunctionNode ? optimized.get(root) : root;
+    }
+
+    /**
+     * Optimize a function whose arguments are already optimized.
+     */
+    private BaseNode visit(FunctionNode functionNode, Map<BaseNode, BaseNode> optimized) {
+        List<BaseNode> originalArguments = functionNode.getArguments();
+        List<BaseNode> arguments = new ArrayList<>(originalArguments.size());
+        boolean changed = false;
+        boolean constant = true;
+        for (BaseNode argument : originalArguments) {
+            BaseNode optimizedArgument = argument instanceof FunctionNode ? optimized.get(argument) : argument;
+            changed |= optimizedArgument != argument;
+            constant &= optimizedArgument instanceof NumberNode;
+            arguments.add(optimizedArgument);
+        }
+        FunctionNode.Type type = functionNode.getType();
+        if (constant) {
+            return new NumberNode(new FunctionNode(type, arguments).calculate(NO_VALUES));
+        }
+        BaseNode result = simplify(type, arguments);
+        if (result != null) {
+            return result;
+        }
+        return changed || functionNode.getClass() == FunctionNode.class ? FunctionNode.of(type, arguments) : functionNode;
+    }
+
+    private BaseNode simplify(FunctionNode.Type type, List<BaseNode> arguments) {
+        BaseNode left = arguments.get(0);
+        BaseNode right = arguments.size() > 1 ? arguments.get(1) : null;
+        switch (type) {
+            case ADD -> {
+                // -0.0 is the only additive identity for every x, including x = -0.0
+                if (isNumber(right, -0.0)) {
+                    return left;
+                } else if (isNumber(left, -0.0)) {
+                    return right;
+                } else if (isNegate(right)) {
+                    return FunctionNode.of(FunctionNode.Type.MINUS, List.of(left, operand(right)));
+                } else if (isNegate(left)) {
+                    return FunctionNode.of(FunctionNode.Type.MINUS, List.of(right, operand(left)));
+                }
+            }
+            case MINUS -> {
+                if (isNumber(right, 0.0)) {
+                    return left;
+                } else if (isNumber(left, -0.0)) {
+                    return negate(right);
+                } else if (isNegate(right)) {
+                    return FunctionNode.of(FunctionNode.Type.ADD, List.of(left, operand(right)));
+                }
+            }
+            case MULTIPY -> {
+                if (isNumber(left, 1.0)) {
+                    return right;
+                } else if (isNumber(right, 1.0)) {
+                    return left;
+                } else if (isNumber(left, -1.0)) {
+                    return negate(right);
+                } else if (isNumber(right, -1.0)) {
+                    return negate(left);
+                }
+            }
+            case DIVIDE -> {
+                if (isNumber(right, 1.0)) {
+                    return left;
+                } else if (isNumber(right, -1.0)) {
+                    return negate(left);
+                }
+            }
+            case POW -> {
+                if (isNumber(right, 1.0)) {
+                    return left;
+                } else if (isNumber(right, 0.0) || isNumber(right, -0.0)) {
+                    // x^0 is 1 for every x, including NaN
+                    return new NumberNode(1.0);
+                } else if (isNumber(right, 2.0)) {
+                    return new SquareNode(left);
+                } else if (!strict) {
+                    if (isNumber(right, 3.0)) {
+                        return new MultiplyNode(new SquareNode(left), left);
+                    } else if (isNumber(right, 4.0)) {
+                        return new SquareNode(new SquareNode(left));
+                    } else if (isNumber(right, -1.0)) {
+                        return new DivideNode(new NumberNode(1.0), left);
+                    } else if (isNumber(right, 0.5)) {
+                        return new MathFunctionNode(FunctionNode.Type.SQRT, left);
+                    }
+                }
+            }
+            case LOG -> {
+                if (right instanceof NumberNode numberNode) {
+                    BaseNode ln = new MathFunctionNode(FunctionNode.Type.LN, left);
+                    double lnBase = Math.log(numberNode.getNumber());
+                    return strict ? new DivideNode(ln, new NumberNode(lnBase)) : new MultiplyNode(ln, new NumberNode(1 / lnBase));
+                } else if (left instanceof NumberNode numberNode) {
+                    return new DivideNode(new NumberNode(Math.log(numberNode.getNumber())), new MathFunctionNode(FunctionNode.Type.LN, right));
+                }
+            }
+            case NEGATE -> {
+                if (isNegate(left)) {
+                    return operand(left);
+                }
+            }
+            case IF -> {
+                if (left instanceof NumberNode numberNode) {
+                    return FunctionNode.isTrue(numberNode.getNumber()) ? right : arguments.get(2);
+                } else if (right == arguments.get(2)) {
+                    return right;
+                }
+            }
+            default -> {
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNumber(BaseNode node, double number) {
+        return node instanceof NumberNode numberNode &&
+                Double.doubleToRawLongBits(numberNode.getNumber()) == Double.doubleToRawLongBits(number);
+    }
+
+    private static boolean isNegate(BaseNode node) {
+        return node instanceof FunctionNode functionNode && functionNode.getType() == FunctionNode.Type.NEGATE;
+    }
+
+    private static BaseNode operand(BaseNode negateNode) {
+        return ((FunctionNode) negateNode).getArguments().get(0);
+    }
+
+    private static BaseNode negate(BaseNode node) {
+        return isNegate(node) ? operand(node) : new NegateNode(node);
+    }
+
+}
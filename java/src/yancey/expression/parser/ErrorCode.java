@@ -0,0 +1,21 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.parser;
+
+public enum ErrorCode {
+    NONE,
+    UNEXPECTED_END,
+    UNEXPECTED_TOKEN,
+    TRAILING_TOKENS,
+    MISSING_LEFT_BRACKET,
+    MISSING_RIGHT_BRACKET,
+    MISSING_COMMA,
+    INVALID_NUMBER,
+    TOO_DEEP,
+    UNKNOWN_VARIABLE,
+}
@@ -0,0 +1,37 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.parser;
+
+/**
+ * A syntax error with the position where it was found. It has no stack trace, so it is cheap to create.
+ */
+public class ParseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ErrorCode errorCode;
+    private final int offset;
+
+    public ParseException(ErrorCode errorCode, String message, int offset) {
+        super(message, null, false, false);
+        this.errorCode = errorCode;
+        this.offset = offset;
+    }
+
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Get the index of the character in the source where the error was found.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+}
@@ -12,160 +12,326 @@ import yancey.expression.ast.node.FunctionNode;
 import yancey.expression.ast.node.NumberNode;
 import yancey.expression.ast.node.VariableNode;
 import yancey.expression.lexer.Token;
+import yancey.expression.lexer.TokenBuffer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * An operator-precedence parser with explicit stacks, so the nesting of the input is only limited by
+ * the configurable maximum depth instead of the thread stack.
+ * <p>
+ * The grammar, from the lowest to the highest precedence:
+ * <pre>
+ * expression = sum (('<' | '<=' | '>' | '>=' | '==' | '=' | '!=') sum)*    1 if the comparison holds, else 0
+ * sum        = term (('+' | '-') term)*
+ * term       = power (('*' | '/') power | power)*     the second form is implicit multiplication
+ * power      = factor ('^' factor)*                   left associative
+ * factor     = '(' expression ')' | number | function '(' arguments ')' | variable | ('+' | '-') factor
+ * </pre>
+ */
 public class Parser {
 
+    public static final int DEFAULT_MAX_DEPTH = 1024;
+
+    private static final int OPERATOR_ADD = 0;
+    private static final int OPERATOR_MINUS = 1;
+    private static final int OPERATOR_MULTIPLY = 2;
+    private static final int OPERATOR_DIVIDE = 3;
+    private static final int OPERATOR_POW = 4;
+    private static final int OPERATOR_NEGATE = 5;
+    private static final int OPERATOR_FRAME = 6;
+    private static final int OPERATOR_LESS = 7;
+    private static final int OPERATOR_LESS_EQUAL = 8;
+    private static final int OPERATOR_GREATER = 9;
+    private static final int OPERATOR_GREATER_EQUAL = 10;
+    private static final int OPERATOR_EQUAL = 11;
+    private static final int OPERATOR_NOT_EQUAL = 12;
+
+    private static final int[] PRECEDENCES = {2, 2, 3, 3, 4, 5, 0, 1, 1, 1, 1, 1, 1};
+
     private final TokenReader tokenReader;
+    private final int maxDepth;
+    private final List<BaseNode> operands = new ArrayList<>();
+    private final List<Frame> frames = new ArrayList<>();
+    private int[] operators = new int[16];
+    private int operatorCount;
+    private int depth;
 
-    private Parser(TokenReader tokenReader) {
+    private Parser(TokenReader tokenReader, int maxDepth) {
         this.tokenReader = tokenReader;
+        this.maxDepth = maxDepth;
     }
 
     public static BaseNode parse(List<Token> tokens) {
+        return parse(TokenBuffer.of(tokens));
+    }
+
+    public static BaseNode parse(TokenBuffer tokens) {
+        return parse(tokens, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Parse the tokens, failing when brackets, function calls and unary minus signs are nested deeper than maxDepth.
+     *
+     * @throws ParseException if the tokens are not a valid expression
+     */
+    public static BaseNode parse(TokenBuffer tokens, int maxDepth) {
         TokenReader tokenReader = new TokenReader(tokens);
-        BaseNode result = new Parser(tokenReader).parseExpression();
+        BaseNode result = new Parser(tokenReader, maxDepth).parseExpression();
         if (tokenReader.hasNext()) {
-            throw new RuntimeException("tokens not read completed");
+            throw new ParseException(ErrorCode.TRAILING_TOKENS, "tokens not read completed", tokenReader.getOffset());
         }
         return result;
     }
 
     private BaseNode parseExpression() {
-        BaseNode result = parseTerm();
-        while (tokenReader.hasNext()) {
-            Token.TokenType tokenType = tokenReader.peek().tokenType();
-            if (tokenType == Token.TokenType.ADD) {
-                tokenReader.skip();
-                result = new FunctionNode(FunctionNode.Type.ADD, List.of(result, parseTerm()));
-            } else if (tokenType == Token.TokenType.MINUS) {
-                tokenReader.skip();
-                result = new FunctionNode(FunctionNode.Type.MINUS, List.of(result, parseTerm()));
-            } else {
+        boolean expectOperand = true;
+        while (true) {
+            if (expectOperand) {
+                if (!tokenReader.hasNext()) {
+                    throw new ParseException(ErrorCode.UNEXPECTED_END, "token reader end", tokenReader.getOffset());
+                }
+                expectOperand = parseOperand();
+                continue;
+            }
+            if (!tokenReader.hasNext()) {
+                reduce(1);
+                if (!frames.isEmpty()) {
+                    throw new ParseException(ErrorCode.UNEXPECTED_END, "token reader end", tokenReader.getOffset());
+                }
                 break;
             }
+            Token.TokenType tokenType = tokenReader.peekType();
+            if (tokenType == Token.TokenType.RIGHT_BRACKET || tokenType == Token.TokenType.COMMA) {
+                reduce(1);
+                if (frames.isEmpty()) {
+                    break;
+                }
+                closeFrame(tokenType);
+                expectOperand = tokenType == Token.TokenType.COMMA;
+                continue;
+            }
+            switch (tokenType) {
+                case ADD -> pushOperator(OPERATOR_ADD);
+                case MINUS -> pushOperator(OPERATOR_MINUS);
+                case MULTIPLY -> pushOperator(OPERATOR_MULTIPLY);
+                case DIVIDE -> pushOperator(OPERATOR_DIVIDE);
+                case POW -> pushOperator(OPERATOR_POW);
+                case LESS -> pushOperator(OPERATOR_LESS);
+                case LESS_EQUAL -> pushOperator(OPERATOR_LESS_EQUAL);
+                case GREATER -> pushOperator(OPERATOR_GREATER);
+                case GREATER_EQUAL -> pushOperator(OPERATOR_GREATER_EQUAL);
+                case EQUAL -> pushOperator(OPERATOR_EQUAL);
+                case NOT_EQUAL -> pushOperator(OPERATOR_NOT_EQUAL);
+                default -> {
+                    // implicit multiplication, the token is the start of the next operand
+                    reduce(PRECEDENCES[OPERATOR_MULTIPLY]);
+                    push(OPERATOR_MULTIPLY);
+                    expectOperand = true;
+                    continue;
+                }
+            }
+            tokenReader.skip();
+            expectOperand = true;
         }
-        return result;
+        return operands.remove(operands.size() - 1);
     }
 
-    private BaseNode parseFactor() {
-        if (!tokenReader.hasNext()) {
-            throw new RuntimeException("token reader end");
-        }
-        switch (tokenReader.peek().tokenType()) {
+    /**
+     * Parse a token where an operand is expected and return whether an operand is still expected.
+     */
+    private boolean parseOperand() {
+        switch (tokenReader.peekType()) {
             case LEFT_BRACKET -> {
+                openFrame(null, 0);
                 tokenReader.skip();
-                BaseNode result = parseExpression();
-                if (!tokenReader.hasNext()) {
-                    throw new RuntimeException("token reader end");
-                }
-                if (tokenReader.peek().tokenType() != Token.TokenType.RIGHT_BRACKET) {
-                    throw new RuntimeException("no right bracket");
-                }
-                tokenReader.skip();
-                return result;
+                return true;
             }
             case NUMBER -> {
-                return new NumberNode(Double.parseDouble(tokenReader.read().string()));
+                int offset = tokenReader.getOffset();
+                String string = tokenReader.readString();
+                if (!isNumber(string)) {
+                    throw new ParseException(ErrorCode.INVALID_NUMBER, "invalid number: " + string, offset);
+                }
+                operands.add(new NumberNode(Double.parseDouble(string)));
+                return false;
             }
             case STRING -> {
-                String string = tokenReader.read().string();
-                return switch (string) {
-                    case "sin" -> new FunctionNode(FunctionNode.Type.SIN, parseArguments(1));
-                    case "cos" -> new FunctionNode(FunctionNode.Type.COS, parseArguments(1));
-                    case "tan" -> new FunctionNode(FunctionNode.Type.TAN, parseArguments(1));
-                    case "asin" -> new FunctionNode(FunctionNode.Type.ASIN, parseArguments(1));
-                    case "acos" -> new FunctionNode(FunctionNode.Type.ACOS, parseArguments(1));
-                    case "atan" -> new FunctionNode(FunctionNode.Type.ATAN, parseArguments(1));
-                    case "sqrt" -> new FunctionNode(FunctionNode.Type.SQRT, parseArguments(1));
-                    case "exp" -> new FunctionNode(FunctionNode.Type.EXP, parseArguments(1));
-                    case "pow" -> new FunctionNode(FunctionNode.Type.POW, parseArguments(2));
-                    case "log" -> new FunctionNode(FunctionNode.Type.LOG, parseArguments(2));
-                    default -> new VariableNode(string);
-                };
+                String string = tokenReader.readString();
+                FunctionNode.Type function = getFunction(string);
+                if (function == null) {
+                    operands.add(new VariableNode(string));
+                    return false;
+                }
+                openFunction(function, FunctionNode.getArgumentCount(function));
+                return true;
             }
             case ADD -> {
                 tokenReader.skip();
-                return parseFactor();
+                return true;
             }
             case MINUS -> {
+                enter();
                 tokenReader.skip();
-                return new FunctionNode(FunctionNode.Type.MULTIPY, List.of(new NumberNode(-1), parseFactor()));
+                push(OPERATOR_NEGATE);
+                return true;
             }
-            default -> throw new RuntimeException("error token type");
+            default -> throw new ParseException(ErrorCode.UNEXPECTED_TOKEN, "error token type", tokenReader.getOffset());
         }
     }
 
-    private BaseNode parseTerm() {
-        BaseNode result = parsePower();
-        outer:
-        while (tokenReader.hasNext()) {
-            switch (tokenReader.peek().tokenType()) {
-                case MULTIPLY -> {
-                    tokenReader.skip();
-                    result = new FunctionNode(FunctionNode.Type.MULTIPY, List.of(result, parsePower()));
-                }
-                case DIVIDE -> {
-                    tokenReader.skip();
-                    result = new FunctionNode(FunctionNode.Type.DIVIDE, List.of(result, parsePower()));
-                }
-                case LEFT_BRACKET, STRING, NUMBER ->
-                        result = new FunctionNode(FunctionNode.Type.MULTIPY, List.of(result, parsePower()));
-                default -> {
-                    break outer;
-                }
-            }
-        }
-        return result;
+    /**
+     * Get the function with the name, or null if the name is not a function and so is a variable.
+     */
+    public static FunctionNode.Type getFunction(String name) {
+        return switch (name) {
+            case "sin" -> FunctionNode.Type.SIN;
+            case "cos" -> FunctionNode.Type.COS;
+            case "tan" -> FunctionNode.Type.TAN;
+            case "asin" -> FunctionNode.Type.ASIN;
+            case "acos" -> FunctionNode.Type.ACOS;
+            case "atan" -> FunctionNode.Type.ATAN;
+            case "sqrt" -> FunctionNode.Type.SQRT;
+            case "exp" -> FunctionNode.Type.EXP;
+            case "pow" -> FunctionNode.Type.POW;
+            case "log" -> FunctionNode.Type.LOG;
+            case "if" -> FunctionNode.Type.IF;
+            case "min" -> FunctionNode.Type.MIN;
+            case "max" -> FunctionNode.Type.MAX;
+            case "abs" -> FunctionNode.Type.ABS;
+            case "clamp" -> FunctionNode.Type.CLAMP;
+            default -> null;
+        };
     }
 
-    private BaseNode parsePower() {
-        if (!tokenReader.hasNext()) {
-            throw new RuntimeException("token reader end");
-        }
-        BaseNode result = parseFactor();
-        while (tokenReader.hasNext()) {
-            if (tokenReader.peek().tokenType() != Token.TokenType.POW) {
-                break;
+    /**
+     * Number tokens are made of digits and points, and need at most one point and at least one digit.
+     */
+    private static boolean isNumber(String string) {
+        int points = 0;
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) == '.') {
+                points++;
             }
-            tokenReader.skip();
-            result = new FunctionNode(FunctionNode.Type.POW, List.of(result, parseFactor()));
         }
-        return result;
+        return points <= 1 && string.length() > points;
     }
 
-    private List<BaseNode> parseArguments(int nArguments) {
+    private void openFunction(FunctionNode.Type type, int nArguments) {
         if (!tokenReader.hasNext()) {
-            throw new RuntimeException("token reader end");
+            throw new ParseException(ErrorCode.UNEXPECTED_END, "token reader end", tokenReader.getOffset());
         }
-        if (tokenReader.peek().tokenType() != Token.TokenType.LEFT_BRACKET) {
-            throw new RuntimeException("require left bracket");
+        if (tokenReader.peekType() != Token.TokenType.LEFT_BRACKET) {
+            throw new ParseException(ErrorCode.MISSING_LEFT_BRACKET, "require left bracket", tokenReader.getOffset());
         }
+        openFrame(type, nArguments);
         tokenReader.skip();
-        List<BaseNode> nodes = new ArrayList<>();
-        if (nArguments > 0) {
-            nodes.add(parseExpression());
+    }
+
+    private void openFrame(FunctionNode.Type type, int nArguments) {
+        enter();
+        frames.add(new Frame(type, nArguments, operands.size()));
+        push(OPERATOR_FRAME);
+    }
+
+    /**
+     * Handle a right bracket or a comma that ends the expression of the innermost frame.
+     */
+    private void closeFrame(Token.TokenType tokenType) {
+        Frame frame = frames.get(frames.size() - 1);
+        if (frame.type == null) {
+            if (tokenType != Token.TokenType.RIGHT_BRACKET) {
+                throw new ParseException(ErrorCode.MISSING_RIGHT_BRACKET, "no right bracket", tokenReader.getOffset());
+            }
+        } else {
+            int nParsed = operands.size() - frame.operandBase;
+            if (tokenType == Token.TokenType.COMMA) {
+                if (nParsed >= frame.nArguments) {
+                    throw new ParseException(ErrorCode.MISSING_RIGHT_BRACKET, "require right bracket", tokenReader.getOffset());
+                }
+                tokenReader.skip();
+                return;
+            }
+            if (nParsed < frame.nArguments) {
+                throw new ParseException(ErrorCode.MISSING_COMMA, "require comma", tokenReader.getOffset());
+            }
+            List<BaseNode> arguments = new ArrayList<>(operands.subList(frame.operandBase, operands.size()));
+            operands.subList(frame.operandBase, operands.size()).clear();
+            operands.add(new FunctionNode(frame.type, arguments));
         }
-        for (int i = 1; i < nArguments; i++) {
-            if (!tokenReader.hasNext()) {
-                throw new RuntimeException("token reader end");
+        tokenReader.skip();
+        frames.remove(frames.size() - 1);
+        operatorCount--;
+        depth--;
+    }
+
+    private void pushOperator(int operator) {
+        reduce(PRECEDENCES[operator]);
+        push(operator);
+    }
+
+    /**
+     * Apply the operators on the top of the operator stack whose precedence is at least minPrecedence.
+     * All operators are left associative, and the frame marker stops the reduction.
+     */
+    private void reduce(int minPrecedence) {
+        while (operatorCount > 0) {
+            int operator = operators[operatorCount - 1];
+            if (operator == OPERATOR_FRAME || PRECEDENCES[operator] < minPrecedence) {
+                break;
             }
-            if (tokenReader.peek().tokenType() != Token.TokenType.COMMA) {
-                throw new RuntimeException("require comma");
+            operatorCount--;
+            BaseNode right = operands.remove(operands.size() - 1);
+            if (operator == OPERATOR_NEGATE) {
+                depth--;
+                operands.add(new FunctionNode(FunctionNode.Type.MULTIPY, List.of(new NumberNode(-1), right)));
+                continue;
             }
-            tokenReader.skip();
-            nodes.add(parseExpression());
+            BaseNode left = operands.remove(operands.size() - 1);
+            FunctionNode.Type type = switch (operator) {
+                case OPERATOR_ADD -> FunctionNode.Type.ADD;
+                case OPERATOR_MINUS -> FunctionNode.Type.MINUS;
+                case OPERATOR_MULTIPLY -> FunctionNode.Type.MULTIPY;
+                case OPERATOR_DIVIDE -> FunctionNode.Type.DIVIDE;
+                case OPERATOR_POW -> FunctionNode.Type.POW;
+                case OPERATOR_LESS -> FunctionNode.Type.LESS;
+                case OPERATOR_LESS_EQUAL -> FunctionNode.Type.LESS_EQUAL;
+                case OPERATOR_GREATER -> FunctionNode.Type.GREATER;
+                case OPERATOR_GREATER_EQUAL -> FunctionNode.Type.GREATER_EQUAL;
+                case OPERATOR_EQUAL -> FunctionNode.Type.EQUAL;
+                default -> FunctionNode.Type.NOT_EQUAL;
+            };
+            operands.add(new FunctionNode(type, List.of(left, right)));
         }
-        if (!tokenReader.hasNext()) {
-            throw new RuntimeException("token reader end");
+    }
+
+    private void enter() {
+        if (++depth > maxDepth) {
+            throw new ParseException(ErrorCode.TOO_DEEP, "expression is nested deeper than " + maxDepth, tokenReader.getOffset());
         }
-        if (tokenReader.peek().tokenType() != Token.TokenType.RIGHT_BRACKET) {
-            throw new RuntimeException("require right bracket");
+    }
+
+    private void push(int operator) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
         }
-        tokenReader.skip();
-        return nodes;
+        operators[operatorCount++] = operator;
+    }
+
+    private static class Frame {
+
+        private final FunctionNode.Type type;
+        private final int nArguments;
+        private final int operandBase;
+
+        private Frame(FunctionNode.Type type, int nArguments, int operandBase) {
+            this.type = type;
+            this.nArguments = nArguments;
+            this.operandBase = operandBase;
+        }
+
     }
 
 }
@@ -8,25 +8,42 @@
 package yancey.expression.parser;
 
 import yancey.expression.lexer.Token;
+import yancey.expression.lexer.TokenBuffer;
 
 import java.util.List;
 
 public class TokenReader {
 
-    private final List<Token> tokens;
+    private final TokenBuffer tokens;
     private int index;
 
-    public TokenReader(List<Token> tokens) {
+    public TokenReader(TokenBuffer tokens) {
         this.tokens = tokens;
         this.index = 0;
     }
 
+    /**
+     * @deprecated lex into a {@link TokenBuffer} and use {@link #TokenReader(TokenBuffer)}
+     */
+    @Deprecated
+    public TokenReader(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
     public boolean hasNext() {
         return index < tokens.size();
     }
 
+    public Token.TokenType peekType() {
+        return tokens.getTokenType(index);
+    }
+
+    /**
+     * @deprecated creates a token object, use {@link #peekType()} and {@link #readString()}
+     */
+    @Deprecated
     public Token peek() {
-        return tokens.get(index);
+        return tokens.getToken(index);
     }
 
     public void skip() {
@@ -35,6 +52,23 @@ public class TokenReader {
         }
     }
 
+    /**
+     * Get the index in the source of the next token, or the length of the source at the end.
+     */
+    public int getOffset() {
+        return index < tokens.size() ? tokens.getStart(index) : tokens.getSource().length();
+    }
+
+    public String readString() {
+        String string = tokens.getString(index);
+        skip();
+        return string;
+    }
+
+    /**
+     * @deprecated creates a token object, use {@link #peekType()} and {@link #readString()}
+     */
+    @Deprecated
     public Token read() {
         Token peek = peek();
         skip();
@@ -0,0 +1,58 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.parser;
+
+import java.util.Set;
+
+public class ValidationResult {
+
+    private final ErrorCode errorCode;
+    private final int offset;
+    private final String message;
+    private final Set<String> variables;
+
+    public ValidationResult(ErrorCode errorCode, int offset, String message, Set<String> variables) {
+        this.errorCode = errorCode;
+        this.offset = offset;
+        this.message = message;
+        this.variables = variables;
+    }
+
+    public boolean isValid() {
+        return errorCode == ErrorCode.NONE;
+    }
+
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Get the index of the character where the first error was found, or -1 if the formula is valid.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Get the known variables the formula uses, with implicit products split into their variables.
+     * It is empty when the formula has a syntax error.
+     */
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "valid " + variables : errorCode + " at " + offset + ": " + message;
+    }
+
+}
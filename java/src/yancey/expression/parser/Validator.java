@@ -0,0 +1,86 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.parser;
+
+import yancey.expression.lexer.Lexer;
+import yancey.expression.lexer.Token;
+import yancey.expression.lexer.TokenBuffer;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Checks formulas without throwing, e.g. on every keystroke of an editor.
+ * The syntax is checked by the parser, and variables are resolved against the known ones
+ * the same way {@link yancey.expression.ast.Expression#bind(java.util.List)} resolves them.
+ * A validator reuses its token buffer, so it must only be used by one thread at a time.
+ */
+public class Validator {
+
+    private final TokenBuffer tokenBuffer = new TokenBuffer();
+    private final int maxDepth;
+
+    public Validator() {
+        this(Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    public Validator(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public ValidationResult validate(CharSequence string, Set<String> knownVariables) {
+        Lexer.lex(string, tokenBuffer);
+        try {
+            Parser.parse(tokenBuffer, maxDepth);
+        } catch (ParseException e) {
+            return new ValidationResult(e.getErrorCode(), e.getOffset(), e.getMessage(), Set.of());
+        }
+        Set<String> variables = new LinkedHashSet<>();
+        ErrorCode errorCode = ErrorCode.NONE;
+        int offset = -1;
+        String message = null;
+        for (int i = 0; i < tokenBuffer.size(); i++) {
+            if (tokenBuffer.getTokenType(i) != Token.TokenType.STRING) {
+                continue;
+            }
+            String name = tokenBuffer.getString(i);
+            if (Parser.getFunction(name) == null && !resolve(name, knownVariables, variables) && errorCode == ErrorCode.NONE) {
+                errorCode = ErrorCode.UNKNOWN_VARIABLE;
+                offset = tokenBuffer.getStart(i);
+                message = "unknown variable name: " + name;
+            }
+        }
+        return new ValidationResult(errorCode, offset, message, Collections.unmodifiableSet(variables));
+    }
+
+    private static boolean resolve(String name, Set<String> knownVariables, Set<String> variables) {
+        if (knownVariables.contains(name)) {
+            variables.add(name);
+            return true;
+        } else if (name.equals("e") || name.equals("pi")) {
+            return true;
+        } else if (name.length() <= 1) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            String variableName = String.valueOf(name.charAt(i));
+            if (!knownVariables.contains(variableName) && !variableName.equals("e")) {
+                return false;
+            }
+        }
+        for (int i = 0; i < name.length(); i++) {
+            String variableName = String.valueOf(name.charAt(i));
+            if (knownVariables.contains(variableName)) {
+                variables.add(variableName);
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,262 @@
+/**
+ * A simple expression engine
+ * Author: Yancey
+ * License: MIT Licence
+ * Website: https://github.com/Yancey2023/ExpressionEngine
+ */
+
+package yancey.expression.vm;
+
+import yancey.expression.ast.BoundExpression;
+import yancey.expression.ast.node.BaseNode;
+import yancey.expression.ast.node.FunctionNode;
+import yancey.expression.ast.node.IfNode;
+import yancey.expression.ast.node.NumberNode;
+import yancey.expression.ast.node.SlotNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bound expression compiled into postfix instructions for a stack machine.
+ * Unlike {@link yancey.expression.compiler.ExpressionCompiler} it defines no class at runtime.
+ * <p>
+ * {@code CONST} and {@code LOAD} are followed by an operand in the code array, every other instruction
+ * pops its arguments from the operand stack and pushes its result. {@code if} with cheap branches, see
+ * {@link IfNode#isSelect(BaseNode, BaseNode)}, becomes {@code SELECT} of the condition and both branches,
+ * otherwise {@code JUMP_IF_FALSE} pops the condition and {@code JUMP} skips the other branch, both followed
+ * by the target in the code array.
+ * A program is immutable, the operand stack is supplied by the caller.
+ */
+public class Program {
+
+    public static final int CONST = 0;
+    public static final int LOAD = 1;
+    public static final int ADD = 2;
+    public static final int MINUS = 3;
+    public static final int MULTIPLY = 4;
+    public static final int DIVIDE = 5;
+    public static final int POW = 6;
+    public static final int SIN = 7;
+    public static final int COS = 8;
+    public static final int TAN = 9;
+    public static final int ASIN = 10;
+    public static final int ACOS = 11;
+    public static final int ATAN = 12;
+    public static final int SQRT = 13;
+    public static final int EXP = 14;
+    public static final int LOG = 15;
+    public static final int NEGATE = 16;
+    public static final int LN = 17;
+    public static final int LESS = 18;
+    public static final int LESS_EQUAL = 19;
+    public static final int GREATER = 20;
+    public static final int GREATER_EQUAL = 21;
+    public static final int EQUAL = 22;
+    public static final int NOT_EQUAL = 23;
+    public static final int SELECT = 24;
+    public static final int JUMP_IF_FALSE = 25;
+    public static final int JUMP = 26;
+    public static final int MIN = 27;
+    public static final int MAX = 28;
+    public static final int ABS = 29;
+    public static final int CLAMP = 30;
+    public static final int SQUARE = 31;
+
+    private final int[] code;
+    private final double[] constants;
+    private final int maxStack;
+
+    private Program(int[] code, double[] constants, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+
+    public static Program compile(BoundExpression expression) {
+        Compiler compiler = new Compiler();
+        int maxStack = compiler.compile(expression.getRoot());
+        double[] constants = new double[compiler.constants.size()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = compiler.constants.get(i);
+        }
+        return new Program(Arrays.copyOf(compiler.code, compiler.codeLength), constants, maxStack);
+    }
+
+    public int[] getCode() {
+        return code.clone();
+    }
+
+    public double[] getConstants() {
+        return constants.clone();
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public double[] newStack() {
+        return new double[maxStack];
+    }
+
+    public double calculate(double[] values) {
+        return calculate(values, newStack());
+    }
+
+    /**
+     * Run the program with a preallocated operand stack of at least {@link #getMaxStack()} elements.
+     */
+    public double calculate(double[] values, double[] stack) {
+        int[] code = this.code;
+        // the top of the operand stack is kept in a local, stack[1, sp) holds the values below it
+        double top = 0;
+        int sp = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case CONST -> {
+                    stack[sp++] = top;
+                    top = constants[code[pc++]];
+                }
+                case LOAD -> {
+                    stack[sp++] = top;
+                    top = values[code[pc++]];
+                }
+                case ADD -> top = stack[--sp] + top;
+                case MINUS -> top = stack[--sp] - top;
+                case MULTIPLY -> top = stack[--sp] * top;
+                case DIVIDE -> top = stack[--sp] / top;
+                case POW -> top = Math.pow(stack[--sp], top);
+                case SIN -> top = Math.sin(top);
+                case COS -> top = Math.cos(top);
+                case TAN -> top = Math.tan(top);
+                case ASIN -> top = Math.asin(top);
+                case ACOS -> top = Math.acos(top);
+                case ATAN -> top = Math.atan(top);
+                case SQRT -> top = Math.sqrt(top);
+                case EXP -> top = Math.exp(top);
+                case LOG -> top = Math.log(stack[--sp]) / Math.log(top);
+                case NEGATE -> top = -top;
+                case LN -> top = Math.log(top);
+                case LESS -> top = stack[--sp] < top ? 1 : 0;
+                case LESS_EQUAL -> top = stack[--sp] <= top ? 1 : 0;
+                case GREATER -> top = stack[--sp] > top ? 1 : 0;
+                case GREATER_EQUAL -> top = stack[--sp] >= top ? 1 : 0;
+                case EQUAL -> top = stack[--sp] == top ? 1 : 0;
+                case NOT_EQUAL -> top = stack[--sp] != top ? 1 : 0;
+                case SELECT -> {
+                    double then = stack[--sp];
+                    top = FunctionNode.isTrue(stack[--sp]) ? then : top;
+                }
+                case JUMP_IF_FALSE -> {
+                    boolean condition = FunctionNode.isTrue(top);
+                    top = stack[--sp];
+                    pc = condition ? pc + 1 : code[pc];
+                }
+                case JUMP -> pc = code[pc];
+                case MIN -> top = Math.min(stack[--sp], top);
+                case MAX -> top = Math.max(stack[--sp], top);
+                case ABS -> top = Math.abs(top);
+                case SQUARE -> top = top * top;
+                case CLAMP -> {
+                    double min = stack[--sp];
+                    top = FunctionNode.clamp(stack[--sp], min, top);
+                }
+                default -> throw new RuntimeException("unknown opcode: " + code[pc - 1]);
+            }
+        }
+        return top;
+    }
+
+    private static class Compiler {
+
+        private final List<Double> constants = new ArrayList<>();
+        private int[] code = new int[16];
+        private int codeLength;
+
+        /**
+         * Emit the instructions of the node and return the max stack size needed to evaluate it.
+         */
+        int compile(BaseNode node) {
+            if (node instanceof NumberNode numberNode) {
+                constants.add(numberNode.getNumber());
+                emit(CONST);
+                emit(constants.size() - 1);
+                return 1;
+            } else if (node instanceof SlotNode slotNode) {
+                emit(LOAD);
+                emit(slotNode.getSlot());
+                return 1;
+            } else if (node instanceof FunctionNode functionNode && functionNode.getType() == FunctionNode.Type.IF &&
+                    !IfNode.isSelect(functionNode.getArguments().get(1), functionNode.getArguments().get(2))) {
+                return compileBranch(functionNode.getArguments());
+            } else if (node instanceof FunctionNode functionNode) {
+                List<BaseNode> arguments = functionNode.getArguments();
+                int maxStack = 0;
+                for (int i = 0; i < arguments.size(); i++) {
+                    maxStack = Math.max(maxStack, i + compile(arguments.get(i)));
+                }
+                emit(switch (functionNode.getType()) {
+                    case ADD -> ADD;
+                    case MINUS -> MINUS;
+                    case MULTIPY -> MULTIPLY;
+                    case DIVIDE -> DIVIDE;
+                    case POW -> POW;
+                    case SIN -> SIN;
+                    case COS -> COS;
+                    case TAN -> TAN;
+                    case ASIN -> ASIN;
+                    case ACOS -> ACOS;
+                    case ATAN -> ATAN;
+                    case SQRT -> SQRT;
+                    case EXP -> EXP;
+                    case LOG -> LOG;
+                    case NEGATE -> NEGATE;
+                    case LN -> LN;
+                    case LESS -> LESS;
+                    case LESS_EQUAL -> LESS_EQUAL;
+                    case GREATER -> GREATER;
+                    case GREATER_EQUAL -> GREATER_EQUAL;
+                    case EQUAL -> EQUAL;
+                    case NOT_EQUAL -> NOT_EQUAL;
+                    case IF -> SELECT;
+                    case MIN -> MIN;
+                    case MAX -> MAX;
+                    case ABS -> ABS;
+                    case CLAMP -> CLAMP;
+                    case SQUARE -> SQUARE;
+                });
+                return maxStack;
+            }
+            throw new RuntimeException("unsupported node: " + node.getClass().getSimpleName());
+        }
+
+        /**
+         * Emit an {@code if} that only runs the instructions of the branch that is taken.
+         */
+        private int compileBranch(List<BaseNode> arguments) {
+            int maxStack = compile(arguments.get(0));
+            emit(JUMP_IF_FALSE);
+            int otherwiseTarget = codeLength;
+            emit(0);
+            maxStack = Math.max(maxStack, compile(arguments.get(1)));
+            emit(JUMP);
+            int endTarget = codeLength;
+            emit(0);
+            code[otherwiseTarget] = codeLength;
+            maxStack = Math.max(maxStack, compile(arguments.get(2)));
+            code[endTarget] = codeLength;
+            return maxStack;
+        }
+
+        private void emit(int value) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, codeLength * 2);
+            }
+            code[codeLength++] = value;
+        }
+
+    }
+
+}